@@ -0,0 +1,66 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.ApplySettings;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The decode step on its own: filtering and building the write model, with no apply behind it
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChangeDecodingBenchmark {
+
+    private static final int DISTINCT_EVENTS = 1 << 16;
+
+    @Param({"70/25/5", "10/85/5"})
+    public String mix;
+
+    @Param({"256"})
+    public int payloadBytes;
+
+    @Param({"false", "true"})
+    public boolean deltaUpdates;
+
+    private ChangeEventDecoder decoder;
+    private ChangeStreamDocument<RawBsonDocument>[] events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChangeProcessingBenchmark.setRootLogLevel("WARN");
+        events = SyntheticChangeEvents.generate(DISTINCT_EVENTS, mix, payloadBytes, 100_000, 42);
+        ApplySettings apply = new ApplySettings();
+        if (deltaUpdates) {
+            apply.setDeltaDatabases(List.of(SyntheticChangeEvents.DATABASE));
+        }
+        MongoProperties properties = ChangeProcessingBenchmark.properties(apply);
+        decoder = new ChangeEventDecoder(properties, new ChangeStreamPipelineBuilder(properties.getIncludeDatabases(),
+                properties.getIgnoreDatabases(), properties.getFilter()));
+    }
+
+    @Benchmark
+    public ChangeEventDecoder.Decision decode() {
+        ChangeStreamDocument<RawBsonDocument> event = events[next];
+        next = (next + 1) & (DISTINCT_EVENTS - 1);
+        return decoder.decode(event);
+    }
+}
@@ -0,0 +1,168 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.AuditSettings;
+import com.mongodb.partreplication.dto.CheckpointSettings;
+import com.mongodb.partreplication.dto.FilterSettings;
+import com.mongodb.partreplication.dto.FlowControlSettings;
+import com.mongodb.partreplication.dto.InitialSyncSettings;
+import com.mongodb.partreplication.dto.JournalSettings;
+import com.mongodb.partreplication.dto.RecorderSettings;
+import com.mongodb.partreplication.dto.StreamSettings;
+import com.mongodb.partreplication.dto.TokenCollection;
+import com.mongodb.partreplication.dto.VerifySettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives ChangeStreamRunner.processChange through the partitioned apply workers and the checkpoint
+// logic against an in-process stub target, so no server is needed.
+//
+//   mvn -Pjmh compile exec:exec                                   # all benchmarks, with -prof gc
+//   mvn -Pjmh compile exec:exec -Djmh.include=ChangeProcessing    # just this one
+//
+// processBatch reports events/sec, processOne the end-to-end latency of a single event, and the
+// gc profiler the allocation rate (gc.alloc.rate.norm is bytes per event for processBatch).
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ChangeProcessingBenchmark {
+
+    static final int EVENTS_PER_INVOCATION = 1000;
+    private static final int DISTINCT_EVENTS = 1 << 16;
+
+    @Param({"70/25/5", "10/85/5"})
+    public String mix;
+
+    @Param({"256", "4096"})
+    public int payloadBytes;
+
+    @Param({"100000"})
+    public int keySpace;
+
+    @Param({"4"})
+    public int workers;
+
+    @Param({"0"})
+    public long coalesceWindowMs;
+
+    // Raise to DEBUG to measure the cost of the per-event logging
+    @Param({"WARN"})
+    public String logLevel;
+
+    private final LongAdder targetWrites = new LongAdder();
+    private ExecutorService streamExecutor;
+    private ExecutorService applyExecutor;
+    private ChangeStreamRunner runner;
+    private ChangeStreamDocument<RawBsonDocument>[] events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setRootLogLevel(logLevel);
+        events = SyntheticChangeEvents.generate(DISTINCT_EVENTS, mix, payloadBytes, keySpace, 42);
+
+        ApplySettings apply = new ApplySettings();
+        apply.setWorkers(workers);
+        apply.setCoalesceWindowMs(coalesceWindowMs);
+        MongoClient target = StubMongoClients.client(targetWrites);
+        MongoClient source = StubMongoClients.client(new LongAdder());
+        streamExecutor = Executors.newCachedThreadPool();
+        applyExecutor = Executors.newCachedThreadPool();
+        runner = new ChangeStreamRunner(null, context(properties(apply), source, target, streamExecutor, applyExecutor));
+        runner.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        runner.close();
+        streamExecutor.shutdownNow();
+        applyExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void processBatch() throws InterruptedException {
+        for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+            runner.processChange(nextEvent());
+        }
+        runner.awaitApplied();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void processOne() throws InterruptedException {
+        runner.processChange(nextEvent());
+        runner.awaitApplied();
+    }
+
+    private ChangeStreamDocument<RawBsonDocument> nextEvent() {
+        ChangeStreamDocument<RawBsonDocument> event = events[next];
+        next = (next + 1) & (DISTINCT_EVENTS - 1);
+        return event;
+    }
+
+    static MongoProperties properties(ApplySettings apply) {
+        return new MongoProperties("mongodb://stub", "mongodb://stub", List.of(), List.of(SyntheticChangeEvents.DATABASE),
+                new TokenCollection("csTrack", "csToken", 1 << 20), apply, new CheckpointSettings(),
+                new InitialSyncSettings(), new FilterSettings(), new StreamSettings(), new RecorderSettings(),
+                new JournalSettings(), new AuditSettings(), new FlowControlSettings(), List.of(), new VerifySettings(),
+                List.of());
+    }
+
+    static ReplicationContext context(MongoProperties properties, MongoClient source, MongoClient target,
+                                      ExecutorService streamExecutor, ExecutorService applyExecutor) {
+        ChangeStreamPipelineBuilder pipelineBuilder = new ChangeStreamPipelineBuilder(properties.getIncludeDatabases(),
+                properties.getIgnoreDatabases(), properties.getFilter());
+        ChangeEventDecoder decoder = new ChangeEventDecoder(properties, pipelineBuilder);
+        ReplicationMetrics metrics = new ReplicationMetrics(new SimpleMeterRegistry());
+        ReplicationTarget defaultTarget = new ReplicationTarget(ReplicationTarget.DEFAULT, target, Map.of(), decoder,
+                new FlowController(properties.getFlowControl(), properties.getApply(), 1), metrics);
+        return ReplicationContext.builder()
+                .sourceMongoClient(source)
+                .targets(List.of(defaultTarget))
+                .mongoProperties(properties)
+                .metrics(metrics)
+                .pipelineBuilder(pipelineBuilder)
+                .decoder(decoder)
+                .auditLog(new AuditLog(properties, metrics))
+                .streamExecutorService(streamExecutor)
+                .applyExecutorService(applyExecutor)
+                .running(new AtomicBoolean(true))
+                .build();
+    }
+
+    static void setRootLogLevel(String level) {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.toLevel(level));
+    }
+}
@@ -0,0 +1,85 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ClusterType;
+import com.mongodb.connection.ServerSettings;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process stand-in for a MongoClient: every database, collection and iterable is a proxy, writes
+// are acknowledged without doing anything, and reads find nothing. Counts the writes it received.
+final class StubMongoClients {
+
+    private static final ClusterDescription CLUSTER = new ClusterDescription(ClusterConnectionMode.SINGLE,
+            ClusterType.STANDALONE, List.of(), ClusterSettings.builder().build(), ServerSettings.builder().build());
+
+    private StubMongoClients() {
+    }
+
+    static MongoClient client(LongAdder writes) {
+        return proxy(MongoClient.class, writes);
+    }
+
+    private static <T> T proxy(Class<T> type, LongAdder writes) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> invoke(proxy, method, args, writes)));
+    }
+
+    private static Object invoke(Object proxy, Method method, Object[] args, LongAdder writes) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "StubMongoClient";
+            default:
+                break;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType == BulkWriteResult.class) {
+            int count = ((List<?>) args[0]).size();
+            writes.add(count);
+            return BulkWriteResult.acknowledged(count, 0, 0, 0, List.of(), List.of());
+        }
+        if (returnType == UpdateResult.class) {
+            writes.increment();
+            return UpdateResult.acknowledged(1, 1L, null);
+        }
+        if (returnType == InsertOneResult.class) {
+            writes.increment();
+            return InsertOneResult.unacknowledged();
+        }
+        if (returnType == DeleteResult.class) {
+            writes.increment();
+            return DeleteResult.acknowledged(1);
+        }
+        if (returnType == ClusterDescription.class) {
+            return CLUSTER;
+        }
+        if (returnType.isInterface() && returnType.getName().startsWith("com.mongodb.client.")) {
+            // MongoDatabase, MongoCollection, FindIterable, ...
+            return proxy(returnType, writes);
+        }
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+
+import java.util.SplittableRandom;
+
+// Builds change events the way the driver hands them over: raw change-stream BSON decoded through
+// the driver's own ChangeStreamDocument codec.
+final class SyntheticChangeEvents {
+
+    static final String DATABASE = "bench";
+    static final String COLLECTION = "events";
+
+    private static final Codec<ChangeStreamDocument<RawBsonDocument>> CODEC =
+            ChangeStreamDocument.createCodec(RawBsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+
+    private SyntheticChangeEvents() {
+    }
+
+    // mix is "insert/update/delete" in percent, e.g. "70/25/5"
+    @SuppressWarnings("unchecked")
+    static ChangeStreamDocument<RawBsonDocument>[] generate(int count, String mix, int payloadBytes, int keySpace,
+                                                            long seed) {
+        String[] parts = mix.split("/");
+        int inserts = Integer.parseInt(parts[0]);
+        int updates = Integer.parseInt(parts[1]);
+        SplittableRandom random = new SplittableRandom(seed);
+        String payload = "x".repeat(Math.max(0, payloadBytes));
+        ChangeStreamDocument<RawBsonDocument>[] events = new ChangeStreamDocument[count];
+        for (int i = 0; i < count; i++) {
+            int roll = random.nextInt(100);
+            String operationType = roll < inserts ? "insert" : roll < inserts + updates ? "update" : "delete";
+            events[i] = decode(event(i, operationType, random.nextInt(Math.max(1, keySpace)), payload));
+        }
+        return events;
+    }
+
+    private static BsonDocument event(int sequence, String operationType, int id, String payload) {
+        BsonDocument documentKey = new BsonDocument("_id", new BsonInt32(id));
+        BsonDocument event = new BsonDocument()
+                .append("_id", new BsonDocument("_data", new BsonString(String.format("82%016X", sequence))))
+                .append("operationType", new BsonString(operationType))
+                .append("clusterTime", new BsonTimestamp((int) (System.currentTimeMillis() / 1000), sequence))
+                .append("wallTime", new BsonDateTime(System.currentTimeMillis()))
+                .append("ns", new BsonDocument("db", new BsonString(DATABASE)).append("coll", new BsonString(COLLECTION)))
+                .append("documentKey", documentKey);
+        if (!"delete".equals(operationType)) {
+            event.append("fullDocument", new BsonDocument("_id", new BsonInt32(id))
+                    .append("version", new BsonInt64(sequence))
+                    .append("payload", new BsonString(payload)));
+        }
+        if ("update".equals(operationType)) {
+            event.append("updateDescription", new BsonDocument("updatedFields",
+                    new BsonDocument("version", new BsonInt64(sequence)))
+                    .append("removedFields", new BsonArray()));
+        }
+        return event;
+    }
+
+    // Through the wire format, so fullDocument is a RawBsonDocument slice as it is off a real cursor
+    private static ChangeStreamDocument<RawBsonDocument> decode(BsonDocument event) {
+        return new RawBsonDocument(event, new BsonDocumentCodec()).decode(CODEC);
+    }
+}
@@ -1,6 +1,18 @@
 package com.mongodb.partreplication.configuration;
 
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.AuditSettings;
+import com.mongodb.partreplication.dto.CheckpointSettings;
+import com.mongodb.partreplication.dto.FilterSettings;
+import com.mongodb.partreplication.dto.FlowControlSettings;
+import com.mongodb.partreplication.dto.InitialSyncSettings;
+import com.mongodb.partreplication.dto.JobSettings;
+import com.mongodb.partreplication.dto.JournalSettings;
+import com.mongodb.partreplication.dto.RecorderSettings;
+import com.mongodb.partreplication.dto.StreamSettings;
+import com.mongodb.partreplication.dto.TargetSettings;
 import com.mongodb.partreplication.dto.TokenCollection;
+import com.mongodb.partreplication.dto.VerifySettings;
 import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -13,11 +25,87 @@ import java.util.List;
 @AllArgsConstructor  // Lombok generates constructor with all final fields
 @ConfigurationProperties(prefix = "spring.data.mongodb")  // Matches your properties prefix
 public class MongoProperties {
+    private static final long JOURNAL_RETRY_BACKOFF_MS = 1000;
+
     private final String sourceUri;
     private final String targetUri;
     private final List<String> ignoreDatabases;
     private final List<String> includeDatabases;
     private final TokenCollection tokenCollection;
+    private final ApplySettings apply;
+    private final CheckpointSettings checkpoint;
+    private final InitialSyncSettings initialSync;
+    private final FilterSettings filter;
+    private final StreamSettings streams;
+    private final RecorderSettings recorder;
+    private final JournalSettings journal;
+    private final AuditSettings audit;
+    private final FlowControlSettings flowControl;
+    private final List<TargetSettings> targets;  // Further targets fed from the same change stream(s)
+    private final VerifySettings verify;
+    private final List<JobSettings> jobs;  // Named jobs run next to the default one, each with its own clusters
+
+    public ApplySettings getApply() {
+        return apply != null ? apply : new ApplySettings();
+    }
+
+    public CheckpointSettings getCheckpoint() {
+        return checkpoint != null ? checkpoint : new CheckpointSettings();
+    }
+
+    public InitialSyncSettings getInitialSync() {
+        return initialSync != null ? initialSync : new InitialSyncSettings();
+    }
+
+    public FilterSettings getFilter() {
+        return filter != null ? filter : new FilterSettings();
+    }
+
+    public StreamSettings getStreams() {
+        return streams != null ? streams : new StreamSettings();
+    }
+
+    public RecorderSettings getRecorder() {
+        return recorder != null ? recorder : new RecorderSettings();
+    }
+
+    public JournalSettings getJournal() {
+        return journal != null ? journal : new JournalSettings();
+    }
+
+    public AuditSettings getAudit() {
+        return audit != null ? audit : new AuditSettings();
+    }
+
+    public FlowControlSettings getFlowControl() {
+        return flowControl != null ? flowControl : new FlowControlSettings();
+    }
+
+    public List<TargetSettings> getTargets() {
+        return targets != null ? targets : List.of();
+    }
+
+    public VerifySettings getVerify() {
+        return verify != null ? verify : new VerifySettings();
+    }
+
+    public List<JobSettings> getJobs() {
+        return jobs != null ? jobs : List.of();
+    }
+
+    // With the journal on, a batch the target rejects as a whole is always retried: recording it as failed
+    // would move the checkpoint and the journal commit past writes that never landed
+    public long getRetryBackoffMs() {
+        long configured = getApply().getRetryBackoffMs();
+        return configured > 0 || !getJournal().isEnabled() ? configured : JOURNAL_RETRY_BACKOFF_MS;
+    }
+
+    // What a named job runs with: its own clusters and databases, every other setting shared
+    public MongoProperties forJob(JobSettings job) {
+        return new MongoProperties(job.getSourceUri(), job.getTargetUri(), job.getIgnoreDatabases(),
+                job.getIncludeDatabases(), tokenCollection, apply, checkpoint, initialSync, filter, streams, recorder,
+                journal, audit, flowControl, List.of(), verify, List.of());
+    }
 
     @PostConstruct
     public void logProperties() {
@@ -0,0 +1,47 @@
+package com.mongodb.partreplication.configuration;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+// Reactive-streams clients for the reactive engine. Created on first use so the blocking engine
+// never opens a second set of connection pools.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveMongoClients {
+
+    private final MongoProperties mongoProperties;
+
+    private MongoClient source;
+    private MongoClient target;
+
+    public synchronized MongoClient getSource() {
+        if (source == null) {
+            log.info("Creating reactive sourceMongoClient");
+            source = MongoClients.create(mongoProperties.getSourceUri());
+        }
+        return source;
+    }
+
+    public synchronized MongoClient getTarget() {
+        if (target == null) {
+            log.info("Creating reactive targetMongoClient");
+            target = MongoClients.create(mongoProperties.getTargetUri());
+        }
+        return target;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (source != null) {
+            source.close();
+        }
+        if (target != null) {
+            target.close();
+        }
+    }
+}
@@ -5,16 +5,33 @@ import org.springframework.context.annotation.Configuration;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Configuration
 @Getter
 public class ReplicationExecutor {
-    private final AtomicBoolean isRunning;
-    private final ExecutorService executorService;
+    private final AtomicBoolean isRunning;                // Running flag of the default job
+    private final ExecutorService executorService;        // Reads and decodes the change streams, two threads each
+                                                          // plus one per fan-out target
+    private final ExecutorService applyExecutorService;   // Runs the partitioned apply workers of every stream
+    private final ExecutorService initialSyncExecutorService; // Coordinates an initial sync run
+    private final ExecutorService verificationExecutorService; // Coordinates a verification run
 
-    public ReplicationExecutor() {
+    public ReplicationExecutor(MongoProperties mongoProperties) {
         this.isRunning = new AtomicBoolean(false);
-        this.executorService = Executors.newSingleThreadExecutor();
+        // Per-database streams of every job each need a reader and their own workers, so both pools grow on
+        // demand, up to streams.max-threads; a job that needs more threads than that stops with an error
+        int maxThreads = Math.max(1, mongoProperties.getStreams().getMaxThreads());
+        this.executorService = boundedPool(maxThreads);
+        this.applyExecutorService = boundedPool(maxThreads);
+        this.initialSyncExecutorService = Executors.newSingleThreadExecutor();
+        this.verificationExecutorService = Executors.newSingleThreadExecutor();
+    }
+
+    private static ExecutorService boundedPool(int maxThreads) {
+        return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
     }
 }
@@ -0,0 +1,33 @@
+package com.mongodb.partreplication.configuration;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.partreplication.dto.TargetSettings;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Clients for the additional fan-out targets, one per configured target name. Created on first use
+// so a replicator without fan-out never opens extra connection pools.
+@Component
+@Slf4j
+public class TargetMongoClients {
+
+    private final Map<String, MongoClient> clients = new HashMap<>();
+
+    public synchronized MongoClient get(TargetSettings target) {
+        return clients.computeIfAbsent(target.getName(), name -> {
+            log.info("Creating targetMongoClient for fan-out target {}", name);
+            return MongoClients.create(target.getUri());
+        });
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        clients.values().forEach(MongoClient::close);
+        clients.clear();
+    }
+}
@@ -1,7 +1,14 @@
 package com.mongodb.partreplication.controller;
 
+import com.mongodb.partreplication.dto.CheckpointDTO;
+import com.mongodb.partreplication.dto.InitialSyncStatusDTO;
 import com.mongodb.partreplication.dto.ReplicationResponseDTO;
+import com.mongodb.partreplication.dto.ReplicationStatusDTO;
+import com.mongodb.partreplication.dto.VerificationStatusDTO;
+import com.mongodb.partreplication.service.InitialSyncService;
 import com.mongodb.partreplication.service.PartReplicationService;
+import com.mongodb.partreplication.service.ReplicationJobService;
+import com.mongodb.partreplication.service.VerificationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +16,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/replication")
@@ -17,6 +25,9 @@ import java.time.format.DateTimeFormatter;
 public class PartReplicationController {
 
     private final PartReplicationService partReplicationService;
+    private final InitialSyncService initialSyncService;
+    private final VerificationService verificationService;
+    private final ReplicationJobService replicationJobService;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_DATE_TIME;
 
     @PostMapping("/start")
@@ -66,14 +77,226 @@ public class PartReplicationController {
     }
 
     @GetMapping("/status")
-    public ResponseEntity<ReplicationResponseDTO> getReplicationStatus() {
-        String currentStatus = partReplicationService.getStatus().name();
+    public ResponseEntity<ReplicationStatusDTO> getReplicationStatus() {
+        return ResponseEntity.ok(partReplicationService.getStatusDetails());
+    }
 
-        return ResponseEntity.ok(ReplicationResponseDTO.builder()
-                .status("SUCCESS")
-                .message("Current replication status: " + currentStatus)
-                .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
-                .build());
+    @PostMapping("/initial-sync")
+    public ResponseEntity<ReplicationResponseDTO> startInitialSync() {
+        try {
+            log.info("Starting initial sync");
+            initialSyncService.startInitialSync();
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Initial sync started")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start initial sync: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to start initial sync: {}", e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start initial sync: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @GetMapping("/initial-sync/status")
+    public ResponseEntity<InitialSyncStatusDTO> getInitialSyncStatus() {
+        return ResponseEntity.ok(initialSyncService.getStatus());
+    }
+
+    @PostMapping("/verify")
+    public ResponseEntity<ReplicationResponseDTO> startVerification(@RequestParam(required = false) Boolean repair) {
+        try {
+            log.info("Starting verification");
+            verificationService.startVerification(repair);
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Verification started")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start verification: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to start verification: {}", e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start verification: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @GetMapping("/verify/status")
+    public ResponseEntity<VerificationStatusDTO> getVerificationStatus() {
+        return ResponseEntity.ok(verificationService.getStatus());
+    }
+
+    @GetMapping("/checkpoints")
+    public ResponseEntity<List<CheckpointDTO>> getCheckpoints(@RequestParam(defaultValue = "20") int limit,
+                                                              @RequestParam(required = false) String stream) {
+        try {
+            return ResponseEntity.ok(partReplicationService.getCheckpointHistory(stream, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/checkpoints/{id}/restore")
+    public ResponseEntity<ReplicationResponseDTO> restoreCheckpoint(@PathVariable String id,
+                                                                    @RequestParam(required = false) String stream) {
+        try {
+            log.info("Restoring checkpoint {} of stream {}", id, stream != null ? stream : "cluster");
+            partReplicationService.restoreCheckpoint(stream, id);
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Checkpoint " + id + " restored; replication will resume from it on next start")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to restore checkpoint: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to restore checkpoint {}: {}", id, e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to restore checkpoint: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<ReplicationResponseDTO> startReplay(@RequestParam String directory,
+                                                              @RequestParam(required = false) String stream,
+                                                              @RequestParam(defaultValue = "0") long eventsPerSecond) {
+        try {
+            log.info("Replaying stream {} from {} at {} events/s", stream != null ? stream : "cluster", directory,
+                    eventsPerSecond > 0 ? eventsPerSecond : "max");
+            partReplicationService.startReplay(stream, directory, eventsPerSecond);
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Replay started; replication stops once every recorded event is applied")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start replay: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to start replay from {}: {}", directory, e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start replay: " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<ReplicationStatusDTO>> getJobs() {
+        return ResponseEntity.ok(replicationJobService.getStatusDetails());
+    }
+
+    @PostMapping("/jobs/{id}/start")
+    public ResponseEntity<ReplicationResponseDTO> startJob(@PathVariable String id) {
+        try {
+            log.info("Starting replication job {}", id);
+            replicationJobService.startJob(id);
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Replication job " + id + " started successfully")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start job " + id + ": " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to start replication job {}: {}", id, e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to start job " + id + ": " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @PostMapping("/jobs/{id}/stop")
+    public ResponseEntity<ReplicationResponseDTO> stopJob(@PathVariable String id) {
+        try {
+            log.info("Stopping replication job {}", id);
+            replicationJobService.stopJob(id);
+
+            return ResponseEntity.ok(ReplicationResponseDTO.builder()
+                    .status("SUCCESS")
+                    .message("Replication job " + id + " stopped successfully")
+                    .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                    .build());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to stop job " + id + ": " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to stop replication job {}: {}", id, e.getMessage(), e);
+
+            return ResponseEntity.internalServerError()
+                    .body(ReplicationResponseDTO.builder()
+                            .status("ERROR")
+                            .message("Failed to stop job " + id + ": " + e.getMessage())
+                            .timestamp(LocalDateTime.now().format(DATE_FORMATTER))
+                            .build());
+        }
+    }
+
+    @GetMapping("/jobs/{id}/status")
+    public ResponseEntity<ReplicationStatusDTO> getJobStatus(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(replicationJobService.getJob(id).getStatusDetails());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     @GetMapping("/health")
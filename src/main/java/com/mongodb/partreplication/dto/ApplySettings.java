@@ -0,0 +1,23 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ApplySettings {
+    private int batchSize = 500;          // Max writes per bulkWrite
+    private long flushIntervalMs = 100;   // Max time a write waits in a batch before it is flushed
+    private int workers = 4;              // Apply threads; events are partitioned by namespace and document key
+    private int queueCapacity = 10000;    // Events buffered per worker before the reader blocks
+    private long coalesceWindowMs = 0;    // Keep only the last write per document within this window; 0 disables
+    private int coalesceMaxEvents = 10000; // Documents held per worker before the window is flushed early
+    private long retryBackoffMs = 0;      // Retry delay for a batch rejected as a whole; 0 fails it (1s with the
+                                          // journal and on the reactive engine, which always retry)
+    private long maxRetryBackoffMs = 30000; // The retry delay doubles up to this
+    private boolean transactions = false;  // Apply each source transaction as a target transaction (sync engine)
+    private int transactionMaxOperations = 1000; // Larger source transactions are split into several
+    private long transactionMaxBytes = 8388608; // Same, by document bytes
+    private List<String> deltaDatabases = new ArrayList<>(); // Apply updates as $set/$unset instead of full replace
+}
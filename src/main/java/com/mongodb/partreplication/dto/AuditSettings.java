@@ -0,0 +1,18 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class AuditSettings {
+    private boolean enabled = false;            // Write a record per replicated event to the audit file
+    private String file = "audit/events.jsonl"; // JSON lines, appended
+    private double sampleRate = 1.0;            // Fraction of events recorded, 0..1
+    private Verbosity verbosity = Verbosity.KEY;
+    private int queueCapacity = 10000;          // Records waiting for the writer; more are dropped, not waited for
+
+    public enum Verbosity {
+        KEY,           // operation, namespace and document key
+        KEY_AND_SIZE,  // plus the BSON size of the full document
+        FULL_DOCUMENT  // plus the full document as JSON
+    }
+}
@@ -0,0 +1,13 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CheckpointDTO {
+    private String id;
+    private String token;
+    private long sequence;
+    private String savedAt;
+}
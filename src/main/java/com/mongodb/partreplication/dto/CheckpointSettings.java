@@ -0,0 +1,10 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class CheckpointSettings {
+    private long everyEvents = 1000;      // Persist the resume token after this many applied events
+    private long intervalMs = 1000;       // ... or after this much time, whichever comes first
+    private boolean historyEnabled = true; // Keep earlier tokens in a capped collection sized by token-collection.size
+}
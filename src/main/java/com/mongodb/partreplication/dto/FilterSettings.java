@@ -0,0 +1,30 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Filters compiled into the change stream pipeline so the source drops what we never replicate.
+// Collection names wrapped in slashes ("/^audit_/") are regular expressions.
+@Data
+public class FilterSettings {
+    private List<CollectionRule> collections = new ArrayList<>();
+    private List<String> operationTypes = new ArrayList<>();   // e.g. insert, update, replace, delete; empty means all
+    private List<ProjectionRule> projections = new ArrayList<>();
+
+    @Data
+    public static class CollectionRule {
+        private String database;
+        private List<String> include = new ArrayList<>();     // empty means every collection
+        private List<String> exclude = new ArrayList<>();
+    }
+
+    // Top-level fields kept (include) or dropped (exclude) from fullDocument and updateDescription; _id is always kept
+    @Data
+    public static class ProjectionRule {
+        private String namespace;
+        private List<String> include = new ArrayList<>();
+        private List<String> exclude = new ArrayList<>();
+    }
+}
@@ -0,0 +1,13 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class FlowControlSettings {
+    private boolean enabled = false;        // Adapt batch size and concurrent writes to target latency
+    private long maxOpsPerSecond = 0;       // Ceiling on writes sent to the target; 0 is unlimited
+    private long maxBytesPerSecond = 0;     // Ceiling on document bytes sent to the target; 0 is unlimited
+    private long targetLatencyMs = 250;     // bulkWrite latency above which the limits are cut
+    private double decreaseFactor = 0.5;    // Multiplier applied to the limits on slow or failed writes
+    private int minBatchSize = 10;          // The batch size limit never drops below this
+}
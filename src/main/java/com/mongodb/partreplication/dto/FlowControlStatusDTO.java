@@ -0,0 +1,17 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class FlowControlStatusDTO {
+    private boolean enabled;
+    private long maxOpsPerSecond;
+    private long maxBytesPerSecond;
+    private int batchSizeLimit;
+    private int concurrencyLimit;
+    private int inFlightWrites;
+    private double latencyMs;
+    private long throttledMs;
+}
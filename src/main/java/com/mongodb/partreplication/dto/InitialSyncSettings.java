@@ -0,0 +1,11 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class InitialSyncSettings {
+    private int threads = 4;                  // Ranges copied concurrently
+    private int rangesPerCollection = 16;     // _id ranges per collection (small collections use one)
+    private int batchSize = 1000;             // Documents per insertMany
+    private boolean startReplication = true;  // Start the change stream once the copy and index build are done
+}
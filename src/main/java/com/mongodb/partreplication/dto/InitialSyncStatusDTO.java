@@ -0,0 +1,21 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class InitialSyncStatusDTO {
+    private String state;
+    private String startedAt;
+    private String finishedAt;
+    private String operationTime;
+    private int collectionsTotal;
+    private int collectionsDone;
+    private int rangesTotal;
+    private int rangesDone;
+    private long documentsEstimated;
+    private long documentsCopied;
+    private long errors;
+    private String message;
+}
@@ -0,0 +1,16 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class JobSettings {
+    private String id;                                         // Used in /jobs/{id}, metrics and local directories
+    private String sourceUri;                                  // Cluster the job reads change streams from
+    private String targetUri;                                  // Cluster the job applies to
+    private List<String> includeDatabases = new ArrayList<>(); // Databases the job replicates
+    private List<String> ignoreDatabases = new ArrayList<>();  // Excluded even when included
+    private String tokenKey;                                   // Resume token key; defaults to lastResumeToken#<id>
+}
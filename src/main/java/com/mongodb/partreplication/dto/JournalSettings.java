@@ -0,0 +1,11 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class JournalSettings {
+    private boolean enabled = false;               // Spill events to a local journal between reader and apply
+    private String directory = "journal";          // One sub-directory per stream
+    private long segmentBytes = 64L * 1024 * 1024; // Size of each memory-mapped segment file
+    private long syncIntervalMs = 1000;            // How often appended records are forced to disk
+}
@@ -0,0 +1,11 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class RecorderSettings {
+    private boolean enabled = false;              // Record every event read from the change stream
+    private String directory = "recordings";      // Where segment files are written
+    private long segmentBytes = 64L * 1024 * 1024; // Start a new segment once this many bytes are written
+    private boolean compress = true;              // gzip each segment
+}
@@ -0,0 +1,30 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class ReplicationStatusDTO {
+    private String job;
+    private String status;
+    private String timestamp;
+    private long eventsReceived;
+    private long eventsApplied;
+    private long eventsSkipped;
+    private long eventsFailed;
+    private long eventsCoalesced;
+    private int readBufferDepth;
+    private long journalBacklogBytes;
+    private int queueDepth;
+    private int inFlight;
+    private String lastCheckpointAt;
+    private long lastCheckpointSequence;
+    private Map<String, Long> lagMsByNamespace;
+    private List<String> resyncNeeded;
+    private FlowControlStatusDTO flowControl;
+    private List<StreamStatusDTO> streams;
+}
@@ -0,0 +1,18 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class StreamSettings {
+    private Engine engine = Engine.SYNC;  // SYNC: blocking driver and worker threads; REACTIVE: reactive-streams driver
+    private boolean perDatabase = false;  // One change stream, resume token and apply engine per included database
+    private int bufferCapacity = 1000;    // Events fetched ahead of decoding before the reader stalls
+    private int batchSize = 0;            // Cursor batch size; 0 keeps the server default
+    private long maxAwaitTimeMs = 0;      // getMore wait on an idle stream; 0 follows apply.flush-interval-ms (max 1s)
+    private int maxThreads = 256;         // Reader and apply threads shared by every job; starts beyond it fail
+
+    public enum Engine {
+        SYNC,
+        REACTIVE
+    }
+}
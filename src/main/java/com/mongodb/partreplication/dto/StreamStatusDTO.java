@@ -0,0 +1,21 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class StreamStatusDTO {
+    private String name;
+    private String status;
+    private String tokenKey;
+    private int readBufferDepth;
+    private long journalBacklogBytes;
+    private int queueDepth;
+    private int inFlight;
+    private long eventsApplied;
+    private long eventsFailed;
+    private List<TargetStatusDTO> targets;
+}
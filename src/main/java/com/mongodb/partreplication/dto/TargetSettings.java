@@ -0,0 +1,13 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class TargetSettings {
+    private String name;                                            // Tags metrics and status; part of the token key
+    private String uri;                                             // Connection string of the target cluster
+    private Map<String, String> databaseMapping = new HashMap<>();  // Source -> target database; others keep their name
+}
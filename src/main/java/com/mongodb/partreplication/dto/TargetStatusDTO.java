@@ -0,0 +1,17 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TargetStatusDTO {
+    private String name;
+    private String tokenKey;
+    private int queueDepth;
+    private int inFlight;
+    private long eventsApplied;
+    private long eventsFailed;
+    private long appliedSequence;
+    private long transactionRetries;
+}
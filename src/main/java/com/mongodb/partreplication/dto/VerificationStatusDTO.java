@@ -0,0 +1,28 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class VerificationStatusDTO {
+    private String state;
+    private String startedAt;
+    private String finishedAt;
+    private boolean repair;
+    private int collectionsTotal;
+    private int collectionsDone;
+    private int rangesTotal;
+    private int rangesChecked;
+    private int rangesMismatched;
+    private long documentsCompared;
+    private long documentsMissing;
+    private long documentsExtra;
+    private long documentsDifferent;
+    private long documentsRepaired;
+    private long errors;
+    private Map<String, Long> differencesByNamespace;
+    private String message;
+}
@@ -0,0 +1,16 @@
+package com.mongodb.partreplication.dto;
+
+import lombok.Data;
+
+@Data
+public class VerifySettings {
+    private int threads = 2;                    // Ranges verified concurrently; each reads both sides in parallel
+    private int rangesPerCollection = 16;       // Top-level _id ranges per collection
+    private int splitFactor = 8;                // Sub-ranges a mismatched range is split into
+    private int maxDepth = 3;                   // Split levels before comparing documents one by one
+    private long leafDocuments = 1000;          // Ranges this small are compared document by document
+    private int batchSize = 1000;               // Documents per cursor batch and per _id lookup
+    private boolean serverHash = true;          // Hash ranges on the servers ($toHashedIndexKey, MongoDB 7.0+)
+    private long maxDocumentsPerSecond = 5000;  // Read throttle across both sides; 0 is unlimited
+    private boolean repair = true;              // Re-copy differing documents from the source
+}
@@ -0,0 +1,153 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.AuditSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Per-event audit trail, kept off the replication threads: record() samples and enqueues a reference
+// to the event, and a single writer thread renders JSON lines to the audit file. When the writer
+// falls behind, records are dropped and counted rather than slowing replication down.
+@Component
+@Slf4j
+public class AuditLog {
+
+    private static final long POLL_MS = 500;
+
+    private final AuditSettings settings;
+    private final ReplicationMetrics metrics;
+    private final BlockingQueue<Entry> queue;
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditLog(MongoProperties mongoProperties, ReplicationMetrics metrics) {
+        this.settings = mongoProperties.getAudit();
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isEnabled() || settings.getSampleRate() <= 0) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::run, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Auditing {} of replicated events at {} to {}", settings.getSampleRate(), settings.getVerbosity(),
+                settings.getFile());
+    }
+
+    // model is the write sent to the target, null for DDL
+    public void record(String stream, ChangeStreamDocument<RawBsonDocument> change, MongoNamespace namespace,
+                       WriteModel<RawBsonDocument> model) {
+        if (!running) {
+            return;
+        }
+        double sampleRate = settings.getSampleRate();
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        if (!queue.offer(new Entry(System.currentTimeMillis(), stream, change, namespace, model))) {
+            metrics.auditDropped();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        Path file = Path.of(settings.getFile());
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (running || !queue.isEmpty()) {
+                    Entry entry = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if (entry == null) {
+                        out.flush();
+                        continue;
+                    }
+                    out.write(render(entry).toJson());
+                    out.newLine();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Audit log {} failed; auditing stopped: {}", file, e.getMessage(), e);
+            running = false;
+            queue.clear();
+        }
+    }
+
+    private BsonDocument render(Entry entry) {
+        ChangeStreamDocument<RawBsonDocument> change = entry.change();
+        BsonDocument record = new BsonDocument("at", new BsonString(Instant.ofEpochMilli(entry.at()).toString()))
+                .append("stream", new BsonString(entry.stream()))
+                .append("op", new BsonString(change.getOperationType().getValue()))
+                .append("ns", new BsonString(entry.namespace() != null ? entry.namespace().getFullName()
+                        : String.valueOf(change.getDatabaseName())));
+        if (change.getDocumentKey() != null) {
+            record.append("key", change.getDocumentKey());
+        }
+        RawBsonDocument document = documentOf(entry.model());
+        if (document != null && settings.getVerbosity() != AuditSettings.Verbosity.KEY) {
+            record.append("size", new BsonInt32(document.getByteBuffer().remaining()));
+            if (settings.getVerbosity() == AuditSettings.Verbosity.FULL_DOCUMENT) {
+                record.append("doc", document);
+            }
+        }
+        return record;
+    }
+
+    // The document written, which for a looked-up update is not the one in the event
+    private static RawBsonDocument documentOf(WriteModel<RawBsonDocument> model) {
+        if (model instanceof InsertOneModel<RawBsonDocument> insert) {
+            return insert.getDocument();
+        }
+        if (model instanceof ReplaceOneModel<RawBsonDocument> replace) {
+            return replace.getReplacement();
+        }
+        return null;
+    }
+
+    private record Entry(long at, String stream, ChangeStreamDocument<RawBsonDocument> change,
+                         MongoNamespace namespace, WriteModel<RawBsonDocument> model) {
+    }
+}
@@ -0,0 +1,247 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Groups consecutive writes for the same namespace into ordered bulkWrite batches, flushed by size,
+// by age of the oldest write, or when the namespace changes. Not thread-safe: one owner thread.
+// With a retry backoff, a batch the target rejects as a whole is retried until it goes through;
+// while that blocks, the spill journal (when enabled) keeps the change stream reader moving.
+@Slf4j
+public class BulkWriteApplier {
+
+    private static final BulkWriteOptions ORDERED = new BulkWriteOptions().ordered(true);
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long RETRY_CHECK_MS = 100;
+
+    private final String target;
+    private final MongoClient targetMongoClient;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Consumer<MongoNamespace> collectionInitializer;
+    private final Consumer<List<ReplicationEvent>> batchCompleted;
+    private final ReplicationMetrics metrics;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final BooleanSupplier retrying;
+    private final FlowController flowController;
+
+    private final List<ReplicationEvent> pending = new ArrayList<>();
+    private MongoNamespace namespace;
+    private long oldestPendingAt;
+    private boolean abandoned;
+
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public BulkWriteApplier(String target, MongoClient targetMongoClient, int batchSize, long flushIntervalMs,
+                            Consumer<MongoNamespace> collectionInitializer,
+                            Consumer<List<ReplicationEvent>> batchCompleted, ReplicationMetrics metrics,
+                            long retryBackoffMs, long maxRetryBackoffMs, BooleanSupplier retrying,
+                            FlowController flowController) {
+        this.target = target;
+        this.targetMongoClient = targetMongoClient;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(0, flushIntervalMs);
+        this.collectionInitializer = collectionInitializer;
+        this.batchCompleted = batchCompleted;
+        this.metrics = metrics;
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.maxRetryBackoffMs = Math.max(this.retryBackoffMs, maxRetryBackoffMs);
+        this.retrying = retrying;
+        this.flowController = flowController;
+    }
+
+    public void add(ReplicationEvent event) {
+        if (namespace != null && !namespace.equals(event.namespace())) {
+            flush();
+        }
+        if (pending.isEmpty()) {
+            namespace = event.namespace();
+            oldestPendingAt = System.currentTimeMillis();
+        }
+        pending.add(event);
+        if (pending.size() >= Math.min(batchSize, flowController.getBatchSizeLimit())) {
+            flush();
+        }
+    }
+
+    public void flushIfDue() {
+        if (!pending.isEmpty() && System.currentTimeMillis() - oldestPendingAt >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ReplicationEvent> batch = new ArrayList<>(pending);
+        MongoNamespace batchNamespace = namespace;
+        pending.clear();
+        namespace = null;
+        if (abandoned) {
+            // Shutting down with the target unreachable: leave the rest unapplied so the checkpoint stays before it
+            return;
+        }
+
+        collectionInitializer.accept(batchNamespace);
+        MongoCollection<RawBsonDocument> target = targetMongoClient.getDatabase(batchNamespace.getDatabaseName())
+                .getCollection(batchNamespace.getCollectionName(), RawBsonDocument.class);
+
+        int offset = 0;
+        int attempt = 0;
+        while (offset < batch.size()) {
+            List<ReplicationEvent> remaining = batch.subList(offset, batch.size());
+            List<WriteModel<RawBsonDocument>> models = models(remaining);
+            try {
+                flowController.acquire(models);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(batch, offset, batchNamespace);
+                return;
+            }
+            long startedAt = System.nanoTime();
+            Exception failure = null;
+            boolean overloaded = false;
+            try {
+                BulkWriteResult result = target.bulkWrite(models, ORDERED);
+                recordApplied(batchNamespace, remaining, startedAt);
+                log.debug("bulkWrite in {}: writes={}, inserted={}, matched={}, modified={}, deleted={}",
+                        batchNamespace, remaining.size(), result.getInsertedCount(), result.getMatchedCount(),
+                        result.getModifiedCount(), result.getDeletedCount());
+                offset = batch.size();
+            } catch (MongoBulkWriteException e) {
+                // A write concern error means the target's secondaries are falling behind
+                overloaded = e.getWriteConcernError() != null;
+                if (e.getWriteErrors().isEmpty()) {
+                    // Only a write concern error: the writes themselves were applied
+                    log.warn("bulkWrite in {} reported write concern error: {}", batchNamespace, e.getWriteConcernError());
+                    recordApplied(batchNamespace, remaining, startedAt);
+                    offset = batch.size();
+                    continue;
+                }
+                // Ordered bulk writes stop at the first error; record it and resume right after it
+                BulkWriteError error = e.getWriteErrors().get(0);
+                ReplicationEvent failed = remaining.get(error.getIndex());
+                if (error.getCode() == DUPLICATE_KEY && failed.model() instanceof InsertOneModel) {
+                    // Replayed insert after resuming from an older checkpoint: the document is already there
+                    log.debug("Skipping already applied insert in {}: documentKey={}", batchNamespace, failed.documentKey());
+                    recordApplied(batchNamespace, remaining.subList(0, error.getIndex() + 1), startedAt);
+                } else {
+                    recordApplied(batchNamespace, remaining.subList(0, error.getIndex()), startedAt);
+                    recordFailure(batchNamespace, failed, error.getCode(), error.getMessage());
+                }
+                offset += error.getIndex() + 1;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                flowController.release(System.nanoTime() - startedAt, overloaded || failure != null);
+            }
+            if (failure == null) {
+                continue;
+            }
+            if (retryBackoffMs > 0) {
+                if (awaitRetry(batchNamespace, remaining.size(), attempt++, failure)) {
+                    continue;
+                }
+                abandon(batch, offset, batchNamespace);
+                return;
+            }
+            // Whole batch rejected (network, auth, ...): every remaining write failed
+            for (ReplicationEvent event : remaining) {
+                recordFailure(batchNamespace, event, -1, failure.getMessage());
+            }
+            offset = batch.size();
+        }
+
+        batchCompleted.accept(batch);
+    }
+
+    // Completes only what was applied, so the checkpoint stays before the rest
+    private void abandon(List<ReplicationEvent> batch, int applied, MongoNamespace ns) {
+        log.warn("Leaving {} unapplied writes in {} on shutdown; they are read again after restart",
+                batch.size() - applied, ns);
+        abandoned = true;
+        batchCompleted.accept(batch.subList(0, applied));
+    }
+
+    // Sleeps with exponential backoff; false once the engine is stopping or the thread is interrupted
+    private boolean awaitRetry(MongoNamespace ns, int writes, int attempt, Exception e) {
+        long backoffMs = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(attempt, 20));
+        log.warn("bulkWrite of {} writes in {} failed (attempt {}), retrying in {} ms: {}",
+                writes, ns, attempt + 1, backoffMs, e.getMessage());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        try {
+            while (System.nanoTime() < deadline) {
+                if (!retrying.getAsBoolean()) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(Math.min(RETRY_CHECK_MS, backoffMs));
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return retrying.getAsBoolean();
+    }
+
+    private List<WriteModel<RawBsonDocument>> models(List<ReplicationEvent> events) {
+        List<WriteModel<RawBsonDocument>> models = new ArrayList<>(events.size());
+        for (ReplicationEvent event : events) {
+            models.add(event.model());
+        }
+        return models;
+    }
+
+    private void recordApplied(MongoNamespace ns, List<ReplicationEvent> events, long startedAtNanos) {
+        appliedCount.addAndGet(events.size());
+        metrics.applyLatency(target, ns, System.nanoTime() - startedAtNanos);
+        if (events.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ReplicationEvent event : events) {
+            metrics.applied(target, ns, event.change(), now);
+        }
+        metrics.event(ns.getDatabaseName(), ns.getCollectionName(), ReplicationMetrics.APPLIED, events.size());
+    }
+
+    private void recordFailure(MongoNamespace ns, ReplicationEvent event, int code, String message) {
+        failedCount.incrementAndGet();
+        metrics.event(ns.getDatabaseName(), ns.getCollectionName(), ReplicationMetrics.FAILED);
+        log.error("Failed to apply {} in {}: seq={}, documentKey={}, resumeToken={}, code={}, error={}",
+                event.change().getOperationType(), ns, event.sequence(),
+                event.documentKey() != null ? event.documentKey().toJson() : null,
+                event.change().getResumeToken() != null ? event.change().getResumeToken().toJson() : null,
+                code, message);
+    }
+}
@@ -0,0 +1,153 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+
+// Decides what a change event means for the target: skip it, write it, look the document up first,
+// or run DDL. Shared by the blocking and the reactive engine, which only differ in how they apply.
+// Full documents stay RawBsonDocument end to end: the bytes read from the source are written to the
+// target as they are, and only the event envelope (ns, documentKey, operationType, ...) is decoded.
+@Slf4j
+public class ChangeEventDecoder {
+
+    private static final ReplaceOptions REPLACE_NO_UPSERT = new ReplaceOptions().upsert(false);
+    private static final Skip SKIP = new Skip();
+
+    private final MongoProperties mongoProperties;
+    private final ChangeStreamPipelineBuilder pipelineBuilder;
+
+    public ChangeEventDecoder(MongoProperties mongoProperties, ChangeStreamPipelineBuilder pipelineBuilder) {
+        this.mongoProperties = mongoProperties;
+        this.pipelineBuilder = pipelineBuilder;
+    }
+
+    public static String databaseOf(ChangeStreamDocument<RawBsonDocument> change) {
+        return change.getNamespace() != null ? change.getNamespace().getDatabaseName() : change.getDatabaseName();
+    }
+
+    public static String collectionOf(ChangeStreamDocument<RawBsonDocument> change) {
+        return change.getNamespace() != null ? change.getNamespace().getCollectionName() : null;
+    }
+
+    public Decision decode(ChangeStreamDocument<RawBsonDocument> change) {
+        if (change.getNamespace() == null) {
+            // dropDatabase events carry only ns.db
+            if (change.getOperationType() == OperationType.DROP_DATABASE && shouldProcessDatabase(change.getDatabaseName())) {
+                return new Ddl(change.getOperationType(), change.getDatabaseName(), null, null);
+            }
+            log.debug("Skipping non-namespace change: {}", change.getOperationType());
+            return SKIP;
+        }
+
+        MongoNamespace namespace = change.getNamespace();
+        String database = namespace.getDatabaseName();
+        String collection = namespace.getCollectionName();
+        if (change.getOperationType() == OperationType.RENAME && change.getDestinationNamespace() != null
+                && !isReplicated(namespace) && isReplicated(change.getDestinationNamespace())) {
+            // Renamed in from outside the replicated namespaces: the DDL applier flags it for a resync
+            return new Ddl(change.getOperationType(), database, namespace, change.getDestinationNamespace());
+        }
+        // Skip if database should not be processed
+        if (!shouldProcessDatabase(database)) {
+            log.debug("Skipping change for database: {}", database);
+            return SKIP;
+        }
+        // The pipeline already filters collections server-side; this covers events it let through
+        if (!pipelineBuilder.matchesCollection(database, collection)) {
+            log.debug("Skipping change for collection: {}.{}", database, collection);
+            return SKIP;
+        }
+
+        switch (change.getOperationType()) {
+            case INSERT:
+                return fullDocumentWrite(namespace, change.getDocumentKey(), change.getFullDocument(), true);
+            case UPDATE:
+            case REPLACE:
+                if (change.getOperationType() == OperationType.UPDATE && isDeltaDatabase(database)) {
+                    BsonDocument update = DeltaUpdateBuilder.toUpdate(change.getUpdateDescription());
+                    if (update != null && update.isEmpty()) {
+                        return SKIP;
+                    }
+                    if (update != null) {
+                        return new Write(namespace, new UpdateOneModel<>(change.getDocumentKey(), update));
+                    }
+                    log.debug("Update in {}.{} cannot be applied as a delta; falling back to full replace", database, collection);
+                    if (change.getFullDocument() == null) {
+                        // Delta streams skip the server-side lookup; fetch the document only for the updates that need it
+                        return new Lookup(namespace, change.getDocumentKey());
+                    }
+                }
+                return fullDocumentWrite(namespace, change.getDocumentKey(), change.getFullDocument(), false);
+            case DELETE:
+                return new Write(namespace, new DeleteOneModel<>(change.getDocumentKey()));
+            case DROP:
+            case RENAME:
+                return new Ddl(change.getOperationType(), database, namespace, change.getDestinationNamespace());
+            default:
+                log.debug("Unhandled operation type: {} for {}.{}", change.getOperationType(), database, collection);
+                return SKIP;
+        }
+    }
+
+    // Completes a Lookup with the document read from the source (null when it is gone)
+    public Decision resolve(Lookup lookup, RawBsonDocument document) {
+        return fullDocumentWrite(lookup.namespace(), lookup.documentKey(), document, false);
+    }
+
+    public boolean shouldProcessDatabase(String database) {
+        return mongoProperties.getIncludeDatabases().contains(database) &&
+                !mongoProperties.getIgnoreDatabases().contains(database);
+    }
+
+    public boolean isReplicated(MongoNamespace namespace) {
+        return shouldProcessDatabase(namespace.getDatabaseName())
+                && pipelineBuilder.matchesCollection(namespace.getDatabaseName(), namespace.getCollectionName());
+    }
+
+    private Decision fullDocumentWrite(MongoNamespace namespace, BsonDocument keyFilter, RawBsonDocument document,
+                                       boolean isInsert) {
+        if (document == null) {
+            log.warn("No full document for {} in {}", isInsert ? "insert" : "update/replace", namespace);
+            return SKIP;
+        }
+        if (isInsert) {
+            // For INSERT: InsertOne keeps explicit failure on duplicates
+            return new Write(namespace, new InsertOneModel<>(document));
+        }
+        // For UPDATE/REPLACE: ReplaceOne without upsert
+        return new Write(namespace, new ReplaceOneModel<>(keyFilter, document, REPLACE_NO_UPSERT));
+    }
+
+    private boolean isDeltaDatabase(String database) {
+        return mongoProperties.getApply().getDeltaDatabases().contains(database);
+    }
+
+    public sealed interface Decision permits Skip, Write, Lookup, Ddl {
+    }
+
+    public record Skip() implements Decision {
+    }
+
+    public record Write(MongoNamespace namespace, WriteModel<RawBsonDocument> model) implements Decision {
+    }
+
+    // A delta update that has to be written as a full replace of the current source document
+    public record Lookup(MongoNamespace namespace, BsonDocument documentKey) implements Decision {
+    }
+
+    // drop, rename or dropDatabase; namespace is null for dropDatabase
+    public record Ddl(OperationType operationType, String database, MongoNamespace namespace,
+                      MongoNamespace destination) implements Decision {
+    }
+}
@@ -0,0 +1,92 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.dto.RecorderSettings;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// Appends change events to size-bounded segment files as raw BSON, one document after another (the
+// mongodump .bson layout), optionally gzip-compressed. Segment names sort in recording order.
+// Not thread-safe: the stream's reader thread owns it.
+@Slf4j
+public class ChangeEventRecorder implements Closeable {
+
+    static final String SEGMENT_SUFFIX = ".bson";
+    static final String COMPRESSED_SUFFIX = ".bson.gz";
+    static final Codec<ChangeStreamDocument<RawBsonDocument>> CODEC =
+            ChangeStreamDocument.createCodec(RawBsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+
+    private static final DateTimeFormatter SEGMENT_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final String stream;
+    private final long segmentBytes;
+    private final boolean compress;
+
+    private OutputStream out;
+    private Path segment;
+    private long segmentWritten;
+    private int segmentIndex;
+
+    public ChangeEventRecorder(RecorderSettings settings, String stream) throws IOException {
+        this.directory = Path.of(settings.getDirectory());
+        this.stream = stream;
+        this.segmentBytes = Math.max(1, settings.getSegmentBytes());
+        this.compress = settings.isCompress();
+        Files.createDirectories(directory);
+    }
+
+    public void record(ChangeStreamDocument<RawBsonDocument> change) throws IOException {
+        ByteBuf buffer = new RawBsonDocument(change, CODEC).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        if (out == null || segmentWritten >= segmentBytes) {
+            roll();
+        }
+        out.write(bytes);
+        segmentWritten += bytes.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            log.info("Closed recording segment {} ({} bytes)", segment, segmentWritten);
+        }
+    }
+
+    // Matches the full <stream>-<yyyyMMdd-HHmmss-SSS>-<n> name: a prefix match would also take the
+    // segments of stream "sales-eu", or of job "sales"'s "sales-cluster", when replaying "sales"
+    static Pattern segmentPattern(String stream) {
+        return Pattern.compile(Pattern.quote(stream) + "-\\d{8}-\\d{6}-\\d{3}-\\d{6,}\\.bson(\\.gz)?");
+    }
+
+    private void roll() throws IOException {
+        close();
+        String name = stream + "-" + SEGMENT_TIME.format(Instant.now())
+                + String.format("-%06d", segmentIndex++) + (compress ? COMPRESSED_SUFFIX : SEGMENT_SUFFIX);
+        segment = directory.resolve(name);
+        OutputStream file = Files.newOutputStream(segment);
+        out = compress ? new GZIPOutputStream(file, BUFFER_SIZE) : new BufferedOutputStream(file, BUFFER_SIZE);
+        segmentWritten = 0;
+        log.info("Recording stream {} to {}", stream, segment);
+    }
+}
@@ -0,0 +1,100 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// Reads the segments a ChangeEventRecorder wrote for one stream, in recording order, back into
+// change events. A segment cut short (e.g. still being written) ends at its last complete event.
+@Slf4j
+public class ChangeEventReplayReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private DataInputStream in;
+    private Path segment;
+
+    public ChangeEventReplayReader(Path directory, String stream) throws IOException {
+        Pattern segmentName = ChangeEventRecorder.segmentPattern(stream);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> segmentName.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("No recorded segments for stream " + stream + " in " + directory);
+        }
+        log.info("Replaying {} segments of stream {} from {}", segments.size(), stream, directory);
+    }
+
+    // Returns null once every segment has been read
+    public ChangeStreamDocument<RawBsonDocument> next() throws IOException {
+        while (true) {
+            if (in == null) {
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                open(segments.poll());
+            }
+            byte[] bytes = readDocument();
+            if (bytes != null) {
+                return new RawBsonDocument(bytes).decode(ChangeEventRecorder.CODEC);
+            }
+            in.close();
+            in = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+    private void open(Path path) throws IOException {
+        segment = path;
+        InputStream file = Files.newInputStream(path);
+        in = new DataInputStream(path.getFileName().toString().endsWith(ChangeEventRecorder.COMPRESSED_SUFFIX)
+                ? new GZIPInputStream(file, BUFFER_SIZE)
+                : new BufferedInputStream(file, BUFFER_SIZE));
+    }
+
+    // Each BSON document starts with its own little-endian int32 length
+    private byte[] readDocument() throws IOException {
+        byte[] length = new byte[4];
+        try {
+            in.readFully(length);
+        } catch (EOFException e) {
+            return null;
+        }
+        int size = ByteBuffer.wrap(length).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        byte[] bytes = new byte[size];
+        System.arraycopy(length, 0, bytes, 0, 4);
+        try {
+            in.readFully(bytes, 4, size - 4);
+        } catch (EOFException e) {
+            log.warn("Segment {} ends with an incomplete event; skipping the rest of it", segment);
+            return null;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,269 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.partreplication.dto.FilterSettings;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.nin;
+import static com.mongodb.client.model.Filters.nor;
+import static com.mongodb.client.model.Filters.not;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.regex;
+
+// Compiles the database, collection, operation-type and field rules into $match/$set stages so the
+// source server drops events and fields we never write. The same collection rules are also
+// evaluated client-side as a safety net.
+@Slf4j
+public class ChangeStreamPipelineBuilder {
+
+    private final List<String> includeDatabases;
+    private final List<String> ignoreDatabases;
+    private final FilterSettings filter;
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    public ChangeStreamPipelineBuilder(List<String> includeDatabases, List<String> ignoreDatabases, FilterSettings filter) {
+        this.includeDatabases = includeDatabases;
+        this.ignoreDatabases = ignoreDatabases;
+        this.filter = filter;
+        validate(filter);
+    }
+
+    // Fails at startup rather than on the first event of a misconfigured rule
+    private static void validate(FilterSettings filter) {
+        for (FilterSettings.CollectionRule rule : filter.getCollections()) {
+            if (rule.getDatabase() == null || rule.getDatabase().isEmpty()) {
+                throw new IllegalArgumentException("Collection filter rules need a database");
+            }
+        }
+        for (FilterSettings.ProjectionRule rule : filter.getProjections()) {
+            if (rule.getNamespace() == null || rule.getNamespace().indexOf('.') <= 0) {
+                throw new IllegalArgumentException("Projection rules need a <database>.<collection> namespace, got "
+                        + rule.getNamespace());
+            }
+        }
+    }
+
+    public List<Bson> build() {
+        List<Bson> namespaceConditions = new ArrayList<>();
+        if (!includeDatabases.isEmpty()) {
+            namespaceConditions.add(in("ns.db", includeDatabases));
+            log.debug("Include filter for dbs: {}", includeDatabases);
+        }
+        if (!ignoreDatabases.isEmpty()) {
+            namespaceConditions.add(not(in("ns.db", ignoreDatabases)));
+            log.debug("Ignore filter for dbs: {}", ignoreDatabases);
+        }
+        if (!filter.getCollections().isEmpty()) {
+            namespaceConditions.add(collectionFilter());
+        }
+        List<Bson> conditions = new ArrayList<>();
+        if (!namespaceConditions.isEmpty()) {
+            // A rename can move a collection into the replicated namespaces from outside them; renames are
+            // rare, so all of them pass and the decoder looks at both the source and the destination
+            Bson namespaces = namespaceConditions.size() == 1 ? namespaceConditions.get(0) : and(namespaceConditions);
+            conditions.add(or(namespaces, eq("operationType", "rename")));
+        }
+        if (!filter.getOperationTypes().isEmpty()) {
+            conditions.add(in("operationType", filter.getOperationTypes()));
+        }
+
+        List<Bson> pipeline = new ArrayList<>();
+        if (!conditions.isEmpty()) {
+            pipeline.add(match(conditions.size() == 1 ? conditions.get(0) : and(conditions)));
+        }
+        if (!filter.getProjections().isEmpty()) {
+            pipeline.add(projectionStage());
+            pipeline.add(dropEmptyUpdates());
+        }
+        for (Bson stage : pipeline) {
+            log.debug("Pipeline stage: {}", stage.toBsonDocument());
+        }
+        return pipeline;
+    }
+
+    public boolean matchesCollection(String database, String collection) {
+        for (FilterSettings.CollectionRule rule : filter.getCollections()) {
+            if (!rule.getDatabase().equals(database)) {
+                continue;
+            }
+            if (!rule.getInclude().isEmpty() && !matchesAny(rule.getInclude(), collection)) {
+                return false;
+            }
+            if (matchesAny(rule.getExclude(), collection)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Bson collectionFilter() {
+        List<String> ruleDatabases = new ArrayList<>();
+        List<Bson> branches = new ArrayList<>();
+        for (FilterSettings.CollectionRule rule : filter.getCollections()) {
+            List<Bson> collectionConditions = new ArrayList<>();
+            if (!rule.getInclude().isEmpty()) {
+                collectionConditions.add(or(nameConditions(rule.getInclude())));
+            }
+            if (!rule.getExclude().isEmpty()) {
+                collectionConditions.add(nor(nameConditions(rule.getExclude())));
+            }
+            if (collectionConditions.isEmpty()) {
+                // Keeps every collection, like matchesCollection: the database stays under the nin branch
+                continue;
+            }
+            ruleDatabases.add(rule.getDatabase());
+            // Database-level events (dropDatabase) have no ns.coll and must still pass
+            branches.add(and(eq("ns.db", rule.getDatabase()),
+                    or(exists("ns.coll", false), and(collectionConditions))));
+        }
+        branches.add(nin("ns.db", ruleDatabases));
+        return or(branches);
+    }
+
+    private List<Bson> nameConditions(List<String> names) {
+        List<Bson> conditions = new ArrayList<>();
+        List<String> exact = new ArrayList<>();
+        for (String name : names) {
+            if (isRegex(name)) {
+                conditions.add(regex("ns.coll", name.substring(1, name.length() - 1)));
+            } else {
+                exact.add(name);
+            }
+        }
+        if (!exact.isEmpty()) {
+            conditions.add(in("ns.coll", exact));
+        }
+        return conditions;
+    }
+
+    // Rewrites fullDocument and updateDescription per namespace, keeping or dropping top-level fields
+    private Bson projectionStage() {
+        BsonArray fullDocumentBranches = new BsonArray();
+        BsonArray updatedFieldsBranches = new BsonArray();
+        BsonArray removedFieldsBranches = new BsonArray();
+        for (FilterSettings.ProjectionRule rule : filter.getProjections()) {
+            int dot = rule.getNamespace().indexOf('.');
+            BsonDocument namespaceCase = new BsonDocument("$and", new BsonArray(List.of(
+                    new BsonDocument("$eq", new BsonArray(List.of(new BsonString("$ns.db"),
+                            new BsonString(rule.getNamespace().substring(0, dot))))),
+                    new BsonDocument("$eq", new BsonArray(List.of(new BsonString("$ns.coll"),
+                            new BsonString(rule.getNamespace().substring(dot + 1))))))));
+            boolean include = !rule.getInclude().isEmpty();
+            BsonArray fields = new BsonArray();
+            for (String field : include ? rule.getInclude() : rule.getExclude()) {
+                fields.add(new BsonString(field));
+            }
+            if (include) {
+                fields.add(new BsonString("_id"));
+            }
+            fullDocumentBranches.add(branch(namespaceCase, objectProjection("$fullDocument", fields, include)));
+            updatedFieldsBranches.add(branch(namespaceCase,
+                    objectProjection("$updateDescription.updatedFields", fields, include)));
+            removedFieldsBranches.add(branch(namespaceCase,
+                    arrayProjection("$updateDescription.removedFields", fields, include)));
+        }
+
+        BsonDocument updateDescription = new BsonDocument()
+                .append("updatedFields", switchOn(updatedFieldsBranches, "$updateDescription.updatedFields"))
+                .append("removedFields", switchOn(removedFieldsBranches, "$updateDescription.removedFields"))
+                .append("truncatedArrays", new BsonString("$updateDescription.truncatedArrays"))
+                .append("disambiguatedPaths", new BsonString("$updateDescription.disambiguatedPaths"));
+        return new BsonDocument("$set", new BsonDocument()
+                .append("fullDocument", switchOn(fullDocumentBranches, "$fullDocument"))
+                .append("updateDescription", new BsonDocument("$cond", new BsonArray(List.of(
+                        new BsonDocument("$eq", new BsonArray(List.of(new BsonString("$operationType"), new BsonString("update")))),
+                        updateDescription,
+                        new BsonString("$$REMOVE"))))));
+    }
+
+    // An update that only touched projected-out fields has nothing left to apply
+    private Bson dropEmptyUpdates() {
+        BsonDocument emptyUpdate = new BsonDocument("$and", new BsonArray(List.of(
+                new BsonDocument("$eq", new BsonArray(List.of(new BsonString("$operationType"), new BsonString("update")))),
+                isEmpty(new BsonDocument("$objectToArray", ifNull("$updateDescription.updatedFields", new BsonDocument()))),
+                isEmpty(ifNull("$updateDescription.removedFields", new BsonArray())),
+                isEmpty(ifNull("$updateDescription.truncatedArrays", new BsonArray())))));
+        return new BsonDocument("$match", new BsonDocument("$expr", new BsonDocument("$not", new BsonArray(List.of(emptyUpdate)))));
+    }
+
+    private static BsonDocument objectProjection(String input, BsonArray fields, boolean include) {
+        BsonDocument filtered = new BsonDocument("$arrayToObject", new BsonDocument("$filter", new BsonDocument()
+                .append("input", new BsonDocument("$objectToArray", new BsonString(input)))
+                .append("as", new BsonString("f"))
+                .append("cond", fieldCondition("$$f.k", fields, include))));
+        return new BsonDocument("$cond", new BsonArray(List.of(
+                new BsonDocument("$eq", new BsonArray(List.of(new BsonDocument("$type", new BsonString(input)), new BsonString("object")))),
+                filtered,
+                new BsonString(input))));
+    }
+
+    private static BsonDocument arrayProjection(String input, BsonArray fields, boolean include) {
+        BsonDocument filtered = new BsonDocument("$filter", new BsonDocument()
+                .append("input", new BsonString(input))
+                .append("as", new BsonString("f"))
+                .append("cond", fieldCondition("$$f", fields, include)));
+        return new BsonDocument("$cond", new BsonArray(List.of(
+                new BsonDocument("$isArray", new BsonString(input)),
+                filtered,
+                new BsonString(input))));
+    }
+
+    // Matches on the top-level field of a (possibly dotted) path
+    private static BsonDocument fieldCondition(String path, BsonArray fields, boolean include) {
+        BsonDocument topLevel = new BsonDocument("$arrayElemAt", new BsonArray(List.of(
+                new BsonDocument("$split", new BsonArray(List.of(new BsonString(path), new BsonString(".")))),
+                new BsonInt32(0))));
+        BsonDocument inFields = new BsonDocument("$in", new BsonArray(List.of(topLevel, fields)));
+        return include ? inFields : new BsonDocument("$not", new BsonArray(List.of(inFields)));
+    }
+
+    private static BsonDocument branch(BsonDocument condition, BsonValue then) {
+        return new BsonDocument("case", condition).append("then", then);
+    }
+
+    private static BsonDocument switchOn(BsonArray branches, String fallback) {
+        return new BsonDocument("$switch", new BsonDocument("branches", branches).append("default", new BsonString(fallback)));
+    }
+
+    private static BsonDocument ifNull(String input, BsonValue replacement) {
+        return new BsonDocument("$ifNull", new BsonArray(List.of(new BsonString(input), replacement)));
+    }
+
+    private static BsonDocument isEmpty(BsonValue array) {
+        return new BsonDocument("$eq", new BsonArray(List.of(new BsonDocument("$size", array), new BsonInt32(0))));
+    }
+
+    private boolean matchesAny(List<String> names, String collection) {
+        for (String name : names) {
+            if (isRegex(name)) {
+                Pattern pattern = patterns.computeIfAbsent(name, n -> Pattern.compile(n.substring(1, n.length() - 1)));
+                if (pattern.matcher(collection).find()) {
+                    return true;
+                }
+            } else if (name.equals(collection)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRegex(String name) {
+        return name.length() > 2 && name.startsWith("/") && name.endsWith("/");
+    }
+}
@@ -0,0 +1,831 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.CheckpointDTO;
+import com.mongodb.partreplication.dto.JournalSettings;
+import com.mongodb.partreplication.dto.RecorderSettings;
+import com.mongodb.partreplication.dto.StreamSettings;
+import com.mongodb.partreplication.dto.StreamStatusDTO;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.conversions.Bson;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// One change stream, read once and applied to every target. Watches the whole cluster, or a single
+// database when streams are split per database. The reader fetches from the cursor, or from recorded
+// segments in replay mode, into a bounded buffer or the spill journal; one decode loop per target turns
+// events into writes for that target's apply workers.
+@Slf4j
+public class ChangeStreamRunner implements StreamRunner {
+
+    public static final String CLUSTER = "cluster";
+
+    public static final String TOKEN_KEY = "lastResumeToken";
+    private static final long STALL_CHECK_MS = 100;
+    private static final long FETCHER_STOP_GRACE_MS = 5000;
+
+    @Getter
+    private final String name;
+    private final String database;  // null for the cluster-wide stream
+    @Getter
+    private final String tokenKey;
+    private final ReplicationContext context;
+    private final MongoProperties mongoProperties;
+    private final ReplicationMetrics metrics;
+
+    @Getter
+    private volatile PartReplicationService.ReplicationStatus status = PartReplicationService.ReplicationStatus.STOPPED;
+    private volatile List<TargetLane> lanes = List.of();
+    private volatile List<LaneLoop> loops = List.of();  // one per lane; the first runs on this thread
+    private volatile boolean lanesStopped;
+    private volatile BlockingQueue<ChangeStreamDocument<RawBsonDocument>> readBuffer;
+    private volatile boolean fetcherStopped;
+    private volatile boolean fetcherStarted;
+    private final CountDownLatch fetcherExited = new CountDownLatch(1);
+    // Post-batch resume token of the last empty getMore, published after every event before it is queued
+    private volatile BsonDocument idleToken;
+    private volatile SpillJournal journal;
+    private long journalSyncedAt;
+    private final ChangeEventReplayReader replayReader;  // null when reading the live change stream
+    private final long replayEventsPerSecond;            // 0 replays as fast as the pipeline allows
+
+    public ChangeStreamRunner(String database, ReplicationContext context) {
+        this(database, context, null, 0);
+    }
+
+    public ChangeStreamRunner(String database, ReplicationContext context, ChangeEventReplayReader replayReader,
+                              long replayEventsPerSecond) {
+        this.database = database;
+        this.replayReader = replayReader;
+        this.replayEventsPerSecond = replayEventsPerSecond;
+        this.name = database != null ? database : CLUSTER;
+        this.tokenKey = tokenKey(context.getTokenKey(), database);
+        this.context = context;
+        this.mongoProperties = context.getMongoProperties();
+        this.metrics = context.getMetrics();
+    }
+
+    // The cluster-wide stream keeps the job's key so existing tokens still resume
+    public static String tokenKey(String jobTokenKey, String database) {
+        return database != null ? jobTokenKey + ":" + database : jobTokenKey;
+    }
+
+    // Checkpoints of the default target, which the checkpoint endpoints and initial sync work on
+    public CheckpointManager newCheckpointManager() {
+        return new CheckpointManager(context.getTargetMongoClient(), mongoProperties.getTokenCollection(),
+                mongoProperties.getCheckpoint(), tokenKey, metrics);
+    }
+
+    public List<CheckpointDTO> history(int limit) {
+        return newCheckpointManager().history(limit);
+    }
+
+    @Override
+    public Future<?> start(Runnable onStopped) {
+        return context.getStreamExecutorService().submit(() -> {
+            try {
+                run();
+            } finally {
+                onStopped.run();
+            }
+        });
+    }
+
+    private void run() {
+        status = PartReplicationService.ReplicationStatus.STARTING;
+        StreamSettings streamSettings = mongoProperties.getStreams();
+        readBuffer = new ArrayBlockingQueue<>(Math.max(1, streamSettings.getBufferCapacity()));
+        fetcherStopped = false;
+        Future<?> fetcher = null;
+        try {
+            open();
+            journal = openJournal();
+            loops = newLoops(journal);
+            status = PartReplicationService.ReplicationStatus.RUNNING;
+            try {
+                // Events already journaled are applied from the journal; the source resumes after them
+                BsonDocument resumeToken = journal != null && journal.getLastToken() != null
+                        ? journal.getLastToken()
+                        : loadOldestToken();
+                BsonTimestamp startAt = resumeToken == null
+                        ? lanes.get(0).getCheckpointManager().loadStartAtOperationTime()
+                        : null;
+                fetcher = context.getStreamExecutorService().submit(() -> {
+                    fetcherStarted = true;
+                    try {
+                        fetch(resumeToken, startAt);
+                        return null;
+                    } finally {
+                        fetcherExited.countDown();
+                    }
+                });
+                for (LaneLoop loop : loops.subList(1, loops.size())) {
+                    loop.start();
+                }
+                loops.get(0).run(fetcher);
+                log.info("Replication stopped; exiting loop for stream {}", name);
+            } finally {
+                fetcherStopped = true;
+                stopFetcher(fetcher);
+                stopLanes();
+                close();
+            }
+            status = PartReplicationService.ReplicationStatus.STOPPED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Change stream {} interrupted", name);
+            status = PartReplicationService.ReplicationStatus.STOPPED;
+        } catch (RejectedExecutionException e) {
+            // A stream short of its reader, lane or apply threads stops the whole job rather than leave it partial
+            log.error("No thread left for stream {}; stopping the job, raise streams.max-threads: {}", name,
+                    e.getMessage(), e);
+            context.getRunning().set(false);
+            status = PartReplicationService.ReplicationStatus.ERROR;
+        } catch (Exception e) {
+            log.error("Fatal error in change stream {}", name, e);
+            status = PartReplicationService.ReplicationStatus.ERROR;
+        }
+    }
+
+    // Sets up checkpointing and starts the apply workers of every target; package-private for the benchmarks.
+    // If a target cannot start its workers, those of the targets before it are stopped again.
+    void open() {
+        List<TargetLane> opened = new ArrayList<>();
+        try {
+            for (ReplicationTarget target : context.getTargets()) {
+                TargetLane lane = new TargetLane(target, tokenKey, context);
+                lane.open();
+                opened.add(lane);
+            }
+        } catch (RuntimeException e) {
+            opened.forEach(TargetLane::close);
+            throw e;
+        }
+        lanes = List.copyOf(opened);
+        loops = newLoops(null);
+    }
+
+    private List<LaneLoop> newLoops(SpillJournal spill) {
+        List<LaneLoop> created = new ArrayList<>();
+        for (TargetLane lane : lanes) {
+            created.add(new LaneLoop(lane, spill != null ? spill.newReader() : null, created.isEmpty()));
+        }
+        return List.copyOf(created);
+    }
+
+    // Waits until every event processed so far is applied on every target, then moves the checkpoints
+    void awaitApplied() throws InterruptedException {
+        for (TargetLane lane : lanes) {
+            lane.awaitDrained();
+        }
+        for (LaneLoop loop : loops) {
+            loop.checkpoint();
+        }
+    }
+
+    // The reader must be gone before the journal is closed: a quick stop and start would otherwise
+    // leave two writers appending to the same journal segment
+    private void stopFetcher(Future<?> fetcher) {
+        if (fetcher == null) {
+            return;
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            // The reader sees fetcherStopped within one getMore
+            if (fetcherExited.await(maxAwaitMs() + FETCHER_STOP_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            log.warn("Reader of stream {} did not stop within {} ms; interrupting", name,
+                    maxAwaitMs() + FETCHER_STOP_GRACE_MS);
+            fetcher.cancel(true);
+            if (fetcherStarted && !fetcherExited.await(FETCHER_STOP_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                log.error("Reader of stream {} is still running; its journal no longer accepts appends", name);
+            }
+        } catch (InterruptedException e) {
+            fetcher.cancel(true);
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The other lanes see lanesStopped within one poll; one still blocked on its full worker queues is
+    // interrupted. Lanes are only closed once no loop can dispatch to them any more.
+    private void stopLanes() {
+        lanesStopped = true;
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (LaneLoop loop : loops.subList(1, loops.size())) {
+                loop.stop();
+            }
+        } catch (InterruptedException e) {
+            loops.forEach(LaneLoop::cancel);
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // A target that is behind must not miss events, so the stream resumes from the oldest target
+    // token. Targets that are ahead apply the events in between again, which is idempotent. Token
+    // _data strings sort by cluster time.
+    private BsonDocument loadOldestToken() {
+        BsonDocument oldest = null;
+        for (TargetLane lane : lanes) {
+            BsonDocument token = lane.getCheckpointManager().load();
+            if (token == null) {
+                if (lanes.size() > 1) {
+                    log.warn("Target {} has no checkpoint for stream {}; it starts where the other targets resume",
+                            lane.getTarget().getName(), name);
+                }
+                continue;
+            }
+            if (oldest == null || tokenData(token).compareTo(tokenData(oldest)) < 0) {
+                oldest = token;
+            }
+        }
+        return oldest;
+    }
+
+    private static String tokenData(BsonDocument token) {
+        return token.isString("_data") ? token.getString("_data").getValue() : "";
+    }
+
+    // Reader stage: pulls from the cursor into the bounded buffer so the next getMore and the envelope
+    // decoding overlap with filtering and applying. A full buffer stalls the reader rather than growing the heap.
+    private void fetch(BsonDocument resumeToken, BsonTimestamp startAt) throws InterruptedException, IOException {
+        if (replayReader != null) {
+            replay();
+            return;
+        }
+        ChangeEventRecorder recorder = newRecorder();
+        try {
+            fetch(resumeToken, startAt, recorder);
+        } finally {
+            if (recorder != null) {
+                recorder.close();
+            }
+        }
+    }
+
+    private void fetch(BsonDocument resumeToken, BsonTimestamp startAt, ChangeEventRecorder recorder)
+            throws InterruptedException, IOException {
+        BsonDocument startAfter = null;
+        while (context.getRunning().get() && !fetcherStopped) {
+            log.info("Starting to iterate change stream {}...", name);
+            try (MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> cursor =
+                         createChangeStream(resumeToken, startAt, startAfter).cursor()) {
+                startAfter = null;
+                while (context.getRunning().get() && !fetcherStopped) {
+                    ChangeStreamDocument<RawBsonDocument> change = cursor.tryNext();
+                    if (change == null) {
+                        // Caught up: tells the decode loops how far the server has read, so a held-back
+                        // transaction can be closed without waiting for the next event
+                        idleToken = cursor.getResumeToken();
+                        continue;
+                    }
+                    recorder = record(recorder, change);
+                    if (change.getOperationType() == OperationType.INVALIDATE) {
+                        // A database stream is invalidated when its database is dropped; reopen past it. The
+                        // invalidate is neither journaled nor checkpointed: resumeAfter rejects its token, while
+                        // resuming after the event before it gets the invalidate again and reopens here.
+                        log.info("Change stream {} invalidated; reopening", name);
+                        startAfter = change.getResumeToken();
+                        break;
+                    }
+                    if (!enqueue(withLookup(change))) {
+                        return;
+                    }
+                }
+            }
+            resumeToken = null;
+            startAt = null;
+        }
+    }
+
+    // Feeds recorded events through the same stages, paced to replayEventsPerSecond when set
+    private void replay() throws InterruptedException, IOException {
+        long intervalNanos = replayEventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / replayEventsPerSecond : 0;
+        long startedAt = System.nanoTime();
+        long replayed = 0;
+        try (replayReader) {
+            ChangeStreamDocument<RawBsonDocument> change;
+            while (context.getRunning().get() && !fetcherStopped && (change = replayReader.next()) != null) {
+                if (intervalNanos > 0) {
+                    long wait = startedAt + replayed * intervalNanos - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                if (!enqueue(withLookup(change))) {
+                    return;
+                }
+                replayed++;
+            }
+        }
+        log.info("Replayed {} events into stream {} in {} ms", replayed, name,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    // The reader appends to the journal instead of the bounded buffer, so a slow or unreachable target
+    // never holds back reading from the source. Live streams only: a replay already reads from local
+    // files. Fan-out journals even when the journal is switched off, since the journal is what lets
+    // each target read at its own pace.
+    private SpillJournal openJournal() throws IOException {
+        JournalSettings settings = mongoProperties.getJournal();
+        if (replayReader != null || (!settings.isEnabled() && lanes.size() == 1)) {
+            return null;
+        }
+        if (!settings.isEnabled()) {
+            log.info("Stream {} journals its events so each of its {} targets applies at its own pace", name,
+                    lanes.size());
+        }
+        journalSyncedAt = System.currentTimeMillis();
+        return SpillJournal.open(Path.of(settings.getDirectory(), context.localName(name)),
+                settings.getSegmentBytes());
+    }
+
+    private ChangeEventRecorder newRecorder() {
+        RecorderSettings settings = mongoProperties.getRecorder();
+        if (!settings.isEnabled()) {
+            return null;
+        }
+        try {
+            return new ChangeEventRecorder(settings, context.localName(name));
+        } catch (IOException e) {
+            log.error("Failed to start recording stream {}: {}", name, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // A recording failure must not stop replication: recording is switched off for this run instead
+    private ChangeEventRecorder record(ChangeEventRecorder recorder, ChangeStreamDocument<RawBsonDocument> change) {
+        if (recorder == null) {
+            return null;
+        }
+        try {
+            recorder.record(change);
+            return recorder;
+        } catch (IOException e) {
+            log.error("Failed to record change on stream {}; recording stopped: {}", name, e.getMessage(), e);
+            try {
+                recorder.close();
+            } catch (IOException closeError) {
+                log.error("Failed to close recording of stream {}: {}", name, closeError.getMessage());
+            }
+            return null;
+        }
+    }
+
+    // An update that needs the current source document gets it here, once, before it is queued or
+    // journaled: every lane then decodes the same full document, and fan-out reads the source once
+    private ChangeStreamDocument<RawBsonDocument> withLookup(ChangeStreamDocument<RawBsonDocument> change) {
+        if (change.getOperationType() != OperationType.UPDATE || change.getFullDocument() != null
+                || !(context.getDecoder().decode(change) instanceof ChangeEventDecoder.Lookup lookup)) {
+            return change;
+        }
+        RawBsonDocument document = context.getSourceMongoClient()
+                .getDatabase(lookup.namespace().getDatabaseName())
+                .getCollection(lookup.namespace().getCollectionName(), RawBsonDocument.class)
+                .find(lookup.documentKey())
+                .first();
+        if (document == null) {
+            // Deleted since; the lanes skip it and apply the delete that follows
+            return change;
+        }
+        BsonDocument event = new BsonDocument();
+        event.putAll(new RawBsonDocument(change, ChangeEventRecorder.CODEC));
+        event.put("fullDocument", document);
+        return new RawBsonDocument(event, new BsonDocumentCodec()).decode(ChangeEventRecorder.CODEC);
+    }
+
+    private boolean enqueue(ChangeStreamDocument<RawBsonDocument> change) throws InterruptedException, IOException {
+        if (fetcherStopped) {
+            // Stopping: the event is read again after the journal's last token on the next start
+            return false;
+        }
+        SpillJournal spill = journal;
+        if (spill != null) {
+            spill.append(change);
+            return true;
+        }
+        if (readBuffer.offer(change)) {
+            return true;
+        }
+        long stalledAt = System.nanoTime();
+        try {
+            while (!readBuffer.offer(change, STALL_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                if (!context.getRunning().get() || fetcherStopped) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            metrics.stageStall(ReplicationMetrics.STAGE_READ, System.nanoTime() - stalledAt);
+        }
+    }
+
+    @Override
+    public int getReadBufferDepth() {
+        BlockingQueue<ChangeStreamDocument<RawBsonDocument>> buffer = readBuffer;
+        return buffer != null ? buffer.size() : 0;
+    }
+
+    @Override
+    public long getJournalBacklogBytes() {
+        SpillJournal spill = journal;
+        return spill != null ? spill.getBacklogBytes() : 0;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return lanes.stream().mapToInt(TargetLane::getQueueDepth).sum();
+    }
+
+    @Override
+    public int getInFlight() {
+        return lanes.stream().mapToInt(TargetLane::getInFlight).sum();
+    }
+
+    @Override
+    public StreamStatusDTO toStatus() {
+        List<TargetLane> current = lanes;
+        return StreamStatusDTO.builder()
+                .name(name)
+                .status(status.name())
+                .tokenKey(tokenKey)
+                .readBufferDepth(getReadBufferDepth())
+                .journalBacklogBytes(getJournalBacklogBytes())
+                .queueDepth(getQueueDepth())
+                .inFlight(getInFlight())
+                .eventsApplied(current.stream().mapToLong(TargetLane::getAppliedCount).sum())
+                .eventsFailed(current.stream().mapToLong(TargetLane::getFailedCount).sum())
+                .targets(current.stream().map(TargetLane::toStatus).toList())
+                .build();
+    }
+
+    // Lets the journal drop what every target has applied, and forces recent appends to disk
+    private void commitJournal() {
+        try {
+            SpillJournal.Position applied = null;
+            for (LaneLoop loop : loops) {
+                SpillJournal.Position position = loop.appliedPosition;
+                if (position == null) {
+                    applied = null;
+                    break;
+                }
+                if (applied == null || position.compareTo(applied) < 0) {
+                    applied = position;
+                }
+            }
+            if (applied != null) {
+                journal.commit(applied);
+            }
+            long now = System.currentTimeMillis();
+            if (now - journalSyncedAt >= mongoProperties.getJournal().getSyncIntervalMs()) {
+                journal.sync();
+                journalSyncedAt = now;
+            }
+        } catch (Exception e) {
+            log.error("Failed to commit journal of stream {}: {}", name, e.getMessage(), e);
+        }
+    }
+
+    void close() {
+        // stopReplication interrupts the task; clear the flag so the final checkpoint write is accepted
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (LaneLoop loop : loops) {
+                loop.dropTransaction();
+            }
+            for (TargetLane lane : lanes) {
+                lane.close();
+            }
+            for (LaneLoop loop : loops) {
+                loop.checkpoint();
+            }
+            if (journal != null) {
+                commitJournal();
+                journal.close();
+            }
+        } catch (Exception e) {
+            log.error("Failed to drain apply workers of stream {} on shutdown: {}", name, e.getMessage(), e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Defaults to the apply flush interval (at most 1s) so idle periods still flush batches on time
+    private long maxAwaitMs() {
+        long configured = mongoProperties.getStreams().getMaxAwaitTimeMs();
+        return configured > 0 ? configured : Math.max(1, Math.min(1000, mongoProperties.getApply().getFlushIntervalMs()));
+    }
+
+    // Creating the change stream with resume token
+    private ChangeStreamIterable<RawBsonDocument> createChangeStream(BsonDocument resumeToken, BsonTimestamp startAt,
+                                                              BsonDocument startAfter) {
+        try {
+            List<Bson> pipeline = context.getPipelineBuilder().build();
+            log.info("Change stream {} pipeline stages: {}", name, pipeline.size());
+
+            // The update lookup is only needed while some replicated database still applies full replaces
+            List<String> scope = database != null ? List.of(database) : mongoProperties.getIncludeDatabases();
+            List<String> deltaDatabases = mongoProperties.getApply().getDeltaDatabases();
+            FullDocument fullDocument = !scope.isEmpty() && deltaDatabases.containsAll(scope)
+                    ? FullDocument.DEFAULT
+                    : FullDocument.UPDATE_LOOKUP;
+            log.info("Change stream {} fullDocument mode: {}", name, fullDocument.getValue());
+
+            ChangeStreamIterable<RawBsonDocument> stream = (database != null
+                    ? context.getSourceMongoClient().getDatabase(database).watch(pipeline, RawBsonDocument.class)
+                    : context.getSourceMongoClient().watch(pipeline, RawBsonDocument.class))
+                    .fullDocument(fullDocument)
+                    // disambiguatedPaths, which tells a field "a.b" from a nested a.b, is only sent with expanded
+                    // events; DeltaUpdateBuilder falls back to a full replace when it is present
+                    .showExpandedEvents(!deltaDatabases.isEmpty())
+                    .maxAwaitTime(maxAwaitMs(), TimeUnit.MILLISECONDS);
+            int batchSize = mongoProperties.getStreams().getBatchSize();
+            if (batchSize > 0) {
+                stream = stream.batchSize(batchSize);
+            }
+
+            if (startAfter != null) {
+                stream = stream.startAfter(startAfter);
+            } else if (resumeToken != null) {
+                log.info("Resuming change stream {} with token: {}", name, resumeToken);
+                stream = stream.resumeAfter(resumeToken);
+            } else if (startAt != null) {
+                log.info("Starting change stream {} at operation time {} (initial sync handoff)", name, startAt);
+                stream = stream.startAtOperationTime(startAt);
+            } else {
+                log.info("Starting new change stream {} without resume token", name);
+            }
+
+            return stream;
+        } catch (Exception e) {
+            log.error("Error creating change stream {}: {}", name, e.getMessage(), e);
+            throw new RuntimeException("Failed to create change stream", e);
+        }
+    }
+
+    // Hands one event to every lane in turn; the benchmarks drive the stream through it
+    void processChange(ChangeStreamDocument<RawBsonDocument> change) throws InterruptedException {
+        ChangeStreamDocument<RawBsonDocument> resolved = withLookup(change);
+        for (LaneLoop loop : loops) {
+            loop.process(resolved);
+        }
+    }
+
+    // Decodes events for one target lane and holds back its source transactions. With the journal each
+    // loop reads it at its own position, so a slow target only falls behind in the journal and never
+    // holds back the others. The first loop reads on the stream's thread, watches the reader and the
+    // other loops, commits the journal and records the stream-wide audit records and event counts; the
+    // others each run on a thread of their own.
+    private final class LaneLoop {
+
+        private final TargetLane lane;
+        private final SpillJournal.Reader reader;  // null: reads the in-memory buffer
+        private final boolean primary;
+        // Journal position after each event, by checkpoint sequence; committed as the watermark passes it
+        private final NavigableMap<Long, SpillJournal.Position> positions = new TreeMap<>();
+        private volatile SpillJournal.Position appliedPosition;
+        private TransactionGroup pendingTransaction;
+        private final CountDownLatch exited = new CountDownLatch(1);
+        private Future<?> task;
+
+        LaneLoop(TargetLane lane, SpillJournal.Reader reader, boolean primary) {
+            this.lane = lane;
+            this.reader = reader;
+            this.primary = primary;
+        }
+
+        void start() {
+            task = context.getStreamExecutorService().submit(() -> {
+                try {
+                    run(null);
+                    return null;
+                } finally {
+                    exited.countDown();
+                }
+            });
+        }
+
+        // Returns when replication stops, or once a replay has been read to the end
+        void run(Future<?> fetcher) throws Exception {
+            long pollMs = maxAwaitMs();
+            while (context.getRunning().get() && !lanesStopped) {
+                // Polls with a timeout so the checkpoint still moves while idle
+                SpillJournal.Entry entry = reader != null ? reader.poll(pollMs) : null;
+                ChangeStreamDocument<RawBsonDocument> change = reader != null
+                        ? (entry != null ? entry.change() : null)
+                        : readBuffer.poll(pollMs, TimeUnit.MILLISECONDS);
+                if (change != null) {
+                    log.debug("Received change event: {}", change.getOperationType());
+                    process(change);
+                    // A held-back transaction is not begun yet; its position is recorded with the next event
+                    if (entry != null && pendingTransaction == null) {
+                        positions.put(lane.lastSequence(), entry.position());
+                    }
+                } else if (pendingTransaction != null && transactionPassed()) {
+                    applyTransaction();
+                } else if (fetcher != null && fetcher.isDone()) {
+                    // Surfaces the reader's failure; it only finishes cleanly at the end of a replay
+                    fetcher.get();
+                    if (drained()) {
+                        if (pendingTransaction != null) {
+                            // The end of the recording also ends the transaction it stopped in
+                            applyTransaction();
+                        }
+                        log.info("Reader of stream {} finished", name);
+                        break;
+                    }
+                }
+                checkpoint();
+                if (primary) {
+                    watchLanes();
+                    if (journal != null) {
+                        commitJournal();
+                    }
+                }
+            }
+        }
+
+        // A poll timeout alone says nothing: the rest of a transaction can be a getMore away. It has ended
+        // once this loop has read everything queued before the server's post-batch token, and that token
+        // is past the transaction's cluster time. The token is read first, since it is published last.
+        private boolean transactionPassed() {
+            BsonDocument passed = idleToken;
+            return drained() && pendingTransaction.endedBefore(passed);
+        }
+
+        private boolean drained() {
+            return reader != null ? reader.getBacklogBytes() == 0 : readBuffer.isEmpty();
+        }
+
+        // Surfaces the failure of another lane's loop, which stops the whole stream
+        private void watchLanes() throws Exception {
+            for (LaneLoop loop : loops) {
+                if (loop.task != null && loop.task.isDone()) {
+                    loop.task.get();
+                }
+            }
+        }
+
+        void stop() throws InterruptedException {
+            if (task == null || exited.await(maxAwaitMs() + FETCHER_STOP_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            log.warn("Target {} of stream {} did not stop within {} ms; interrupting", lane.getTarget().getName(),
+                    name, maxAwaitMs() + FETCHER_STOP_GRACE_MS);
+            task.cancel(true);
+            if (!exited.await(FETCHER_STOP_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                log.error("Target {} of stream {} is still running", lane.getTarget().getName(), name);
+            }
+        }
+
+        void cancel() {
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+
+        // Moves the lane's checkpoint, and the journal position it has applied everything up to
+        void checkpoint() {
+            lane.checkpoint();
+            Map.Entry<Long, SpillJournal.Position> applied = positions.floorEntry(lane.getAppliedSequence());
+            if (applied != null) {
+                appliedPosition = applied.getValue();
+                positions.headMap(applied.getKey(), true).clear();
+            }
+        }
+
+        // Possibly incomplete; it was never begun, so it is read again after restart
+        void dropTransaction() {
+            if (pendingTransaction != null) {
+                log.info("Dropping {} events of an unfinished transaction on stream {} for target {}",
+                        pendingTransaction.size(), name, lane.getTarget().getName());
+                pendingTransaction = null;
+            }
+        }
+
+        void process(ChangeStreamDocument<RawBsonDocument> change) throws InterruptedException {
+            String database = ChangeEventDecoder.databaseOf(change);
+            String collection = ChangeEventDecoder.collectionOf(change);
+            if (change.getOperationType() == OperationType.INVALIDATE) {
+                // Only from recordings and older journals; its token must never become a checkpoint
+                log.debug("Ignoring invalidate on stream {}", name);
+                return;
+            }
+            if (primary) {
+                metrics.event(database, collection, ReplicationMetrics.RECEIVED);
+            }
+            log.debug("Processing change: {} on {}.{}", change.getOperationType(), database, collection);
+
+            try {
+                if (pendingTransaction != null && !pendingTransaction.includes(change)) {
+                    applyTransaction();
+                }
+                ChangeEventDecoder.Decision decision = context.getDecoder().decode(change);
+                if (decision instanceof ChangeEventDecoder.Lookup lookup) {
+                    // The reader already looked it up (withLookup) and found the document gone
+                    decision = context.getDecoder().resolve(lookup, null);
+                }
+                if (mongoProperties.getApply().isTransactions() && TransactionGroup.isTransactional(change)
+                        && !(decision instanceof ChangeEventDecoder.Ddl)) {
+                    holdForTransaction(change, decision, database, collection);
+                } else if (decision instanceof ChangeEventDecoder.Write write) {
+                    audit(change, write);
+                    lane.dispatch(change, write);
+                } else if (decision instanceof ChangeEventDecoder.Ddl ddl) {
+                    // DDL is applied synchronously once this target's workers have drained
+                    lane.applyDdl(change, ddl);
+                    if (primary) {
+                        context.getAuditLog().record(name, change, ddl.namespace(), null);
+                        metrics.event(database, collection, ReplicationMetrics.APPLIED);
+                    }
+                } else {
+                    if (primary) {
+                        metrics.event(database, collection, ReplicationMetrics.SKIPPED);
+                    }
+                    lane.complete(change);
+                }
+                // Writes complete their sequence once their batch has been flushed by a worker
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // Stops the stream: the event is never completed, so the checkpoint stays before it and it is
+                // read again on restart rather than skipped
+                throw new IllegalStateException("Error processing change for " + database + "." + collection
+                        + " on target " + lane.getTarget().getName() + ": " + e.getMessage(), e);
+            }
+        }
+
+        // With apply.transactions on, a source transaction's events are held back until it ends, then
+        // committed as one target transaction, or as several at the transaction limits
+        private void holdForTransaction(ChangeStreamDocument<RawBsonDocument> change,
+                                        ChangeEventDecoder.Decision decision, String database, String collection)
+                throws InterruptedException {
+            if (pendingTransaction == null) {
+                pendingTransaction = new TransactionGroup(change);
+            }
+            if (decision instanceof ChangeEventDecoder.Write write) {
+                audit(change, write);
+                pendingTransaction.add(change, write);
+            } else {
+                if (primary) {
+                    metrics.event(database, collection, ReplicationMetrics.SKIPPED);
+                }
+                pendingTransaction.add(change, null);
+            }
+            ApplySettings settings = mongoProperties.getApply();
+            if (pendingTransaction.isFull(settings.getTransactionMaxOperations(), settings.getTransactionMaxBytes())) {
+                // Committed as it fills; the rest of the source transaction starts a new group
+                applyTransaction();
+            }
+        }
+
+        private void audit(ChangeStreamDocument<RawBsonDocument> change, ChangeEventDecoder.Write write) {
+            if (primary) {
+                context.getAuditLog().record(name, change, write.namespace(), write.model());
+            }
+        }
+
+        // Commits the held-back transaction on this target before anything after it is processed
+        private void applyTransaction() throws InterruptedException {
+            TransactionGroup group = pendingTransaction;
+            pendingTransaction = null;
+            log.debug("Applying transaction of {} events on stream {} for target {}", group.size(), name,
+                    lane.getTarget().getName());
+            lane.applyTransaction(group, mongoProperties.getApply());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.partreplication.dto.CheckpointDTO;
+import com.mongodb.partreplication.dto.CheckpointSettings;
+import com.mongodb.partreplication.dto.TokenCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the newest safely applied resume token in memory and persists it every N events or T ms,
+// instead of once per event. Each persisted token is also appended to a capped history collection
+// (sized by token-collection.size) so an operator can roll back to an earlier point.
+// Resuming from an older token replays events; the apply path treats replayed writes idempotently.
+@Slf4j
+public class CheckpointManager {
+
+    private static final int NAMESPACE_EXISTS = 48;
+    private static final long MIN_HISTORY_SIZE = 4096;
+
+    private final MongoClient targetMongoClient;
+    private final TokenCollection tokenCollection;
+    private final CheckpointSettings settings;
+    private final String tokenKey;
+    private final String historyCollection;
+    private final ReplicationMetrics metrics;
+
+    private CheckpointTracker.Watermark latest;
+    private long persistedSequence;
+    private long persistedAt = System.currentTimeMillis();
+
+    public CheckpointManager(MongoClient targetMongoClient, TokenCollection tokenCollection,
+                             CheckpointSettings settings, String tokenKey, ReplicationMetrics metrics) {
+        this.targetMongoClient = targetMongoClient;
+        this.tokenCollection = tokenCollection;
+        this.settings = settings;
+        this.tokenKey = tokenKey;
+        this.historyCollection = tokenCollection.getCollection() + "History";
+        this.metrics = metrics;
+    }
+
+    public BsonDocument load() {
+        try {
+            BsonDocument tokenDoc = tokens().find(Filters.eq("_id", tokenKey)).first();
+            if (tokenDoc != null && tokenDoc.isDocument("token")) {
+                log.debug("Retrieved valid resume token {} from {}.{}", tokenKey,
+                        tokenCollection.getDatabase(), tokenCollection.getCollection());
+                return tokenDoc.getDocument("token");
+            }
+            if (tokenDoc != null) {
+                log.warn("Invalid resume token {} (expected a document); deleting and starting fresh.", tokenKey);
+                // Clean up invalid token to avoid repeated warnings
+                tokens().deleteOne(Filters.eq("_id", tokenKey));
+            }
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to retrieve resume token: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Set by initial sync: where the change stream starts when there is no resume token yet
+    public BsonTimestamp loadStartAtOperationTime() {
+        try {
+            BsonDocument tokenDoc = tokens().find(Filters.eq("_id", tokenKey)).first();
+            if (tokenDoc != null && tokenDoc.isTimestamp("startAtOperationTime")) {
+                return tokenDoc.getTimestamp("startAtOperationTime");
+            }
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to retrieve start operation time: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Replaces any resume token with an operation time to start the change stream from
+    public void storeStartAtOperationTime(BsonTimestamp operationTime) {
+        tokens().updateOne(Filters.eq("_id", tokenKey),
+                Updates.combine(
+                        Updates.set("startAtOperationTime", operationTime),
+                        Updates.unset("token"),
+                        Updates.set("updatedAt", new BsonDateTime(System.currentTimeMillis()))),
+                new UpdateOptions().upsert(true));
+        log.info("Stored start operation time {} for {}", operationTime, tokenKey);
+    }
+
+    public void initHistory() {
+        if (!settings.isHistoryEnabled()) {
+            return;
+        }
+        MongoDatabase database = targetMongoClient.getDatabase(tokenCollection.getDatabase());
+        try {
+            database.createCollection(historyCollection, new CreateCollectionOptions()
+                    .capped(true)
+                    .sizeInBytes(Math.max(MIN_HISTORY_SIZE, tokenCollection.getSize())));
+            log.info("Created capped checkpoint history {}.{} ({} bytes)", tokenCollection.getDatabase(),
+                    historyCollection, tokenCollection.getSize());
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != NAMESPACE_EXISTS) {
+                log.error("Failed to create checkpoint history: {}", e.getMessage(), e);
+            }
+        } catch (Exception e) {
+            log.error("Failed to create checkpoint history: {}", e.getMessage(), e);
+        }
+    }
+
+    // Records the latest watermark and persists it when enough events or time have passed
+    public synchronized void update(CheckpointTracker.Watermark watermark) {
+        if (watermark != null) {
+            latest = watermark;
+        }
+        if (latest == null || latest.sequence() <= persistedSequence) {
+            return;
+        }
+        if (latest.sequence() - persistedSequence >= settings.getEveryEvents()
+                || System.currentTimeMillis() - persistedAt >= settings.getIntervalMs()) {
+            persist();
+        }
+    }
+
+    // Persists whatever is pending; called on graceful stop
+    public synchronized void flush() {
+        if (latest != null && latest.sequence() > persistedSequence) {
+            persist();
+        }
+    }
+
+    public List<CheckpointDTO> history(int limit) {
+        List<CheckpointDTO> checkpoints = new ArrayList<>();
+        for (BsonDocument entry : history().find(Filters.eq("key", tokenKey))
+                .sort(Sorts.descending("$natural"))
+                .limit(limit)) {
+            checkpoints.add(CheckpointDTO.builder()
+                    .id(entry.getObjectId("_id").getValue().toHexString())
+                    .token(entry.getDocument("token").toJson())
+                    .sequence(entry.getInt64("sequence").getValue())
+                    .savedAt(Instant.ofEpochMilli(entry.getDateTime("savedAt").getValue()).toString())
+                    .build());
+        }
+        return checkpoints;
+    }
+
+    // Makes an earlier checkpoint the one the next start resumes from
+    public void restore(String checkpointId) {
+        BsonDocument entry = history().find(Filters.and(
+                        Filters.eq("_id", new ObjectId(checkpointId)),
+                        Filters.eq("key", tokenKey)))
+                .first();
+        if (entry == null) {
+            throw new IllegalArgumentException("No checkpoint " + checkpointId + " for " + tokenKey);
+        }
+        writeToken(entry.getDocument("token"));
+        log.info("Restored resume token {} from checkpoint {}", tokenKey, checkpointId);
+    }
+
+    private void persist() {
+        long startedAt = System.nanoTime();
+        try {
+            writeToken(latest.token());
+            if (settings.isHistoryEnabled()) {
+                history().insertOne(new BsonDocument("_id", new BsonObjectId())
+                        .append("key", new BsonString(tokenKey))
+                        .append("token", latest.token())
+                        .append("sequence", new BsonInt64(latest.sequence()))
+                        .append("savedAt", new BsonDateTime(System.currentTimeMillis())));
+            }
+            log.debug("Stored resume token {} at sequence {}", tokenKey, latest.sequence());
+            persistedSequence = latest.sequence();
+            metrics.checkpoint(persistedSequence, System.nanoTime() - startedAt);
+        } catch (Exception e) {
+            // Keep the watermark in memory; the next update retries
+            log.error("Failed to store resume token: {}", e.getMessage(), e);
+        } finally {
+            persistedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void writeToken(BsonDocument token) {
+        tokens().updateOne(Filters.eq("_id", tokenKey),
+                Updates.combine(Updates.set("token", token), Updates.set("updatedAt", new BsonDateTime(System.currentTimeMillis()))),
+                new UpdateOptions().upsert(true));
+    }
+
+    private MongoCollection<BsonDocument> tokens() {
+        return targetMongoClient.getDatabase(tokenCollection.getDatabase())
+                .getCollection(tokenCollection.getCollection(), BsonDocument.class);
+    }
+
+    private MongoCollection<BsonDocument> history() {
+        return targetMongoClient.getDatabase(tokenCollection.getDatabase())
+                .getCollection(historyCollection, BsonDocument.class);
+    }
+}
@@ -0,0 +1,53 @@
+package com.mongodb.partreplication.service;
+
+import org.bson.BsonDocument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Tracks which events are still in flight across the apply workers. The safe resume token is the
+// token of the newest event below the lowest sequence that is not yet applied.
+public class CheckpointTracker {
+
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListMap<Long, BsonDocument> tokens = new ConcurrentSkipListMap<>();
+    private long sequence;
+
+    // Called by the reader, in stream order
+    public synchronized long begin(BsonDocument resumeToken) {
+        long seq = ++sequence;
+        tokens.put(seq, resumeToken);
+        inFlight.add(seq);
+        return seq;
+    }
+
+    // Called by any worker once the event has been applied (or recorded as failed)
+    public void complete(long seq) {
+        inFlight.remove(seq);
+    }
+
+    // Returns the newest token every worker has moved past, or null if the watermark did not move
+    public synchronized Watermark advance() {
+        Long lowestInFlight = inFlight.ceiling(Long.MIN_VALUE);
+        long watermark = lowestInFlight != null ? lowestInFlight : sequence + 1;
+        Map.Entry<Long, BsonDocument> safe = tokens.lowerEntry(watermark);
+        if (safe == null) {
+            return null;
+        }
+        tokens.headMap(safe.getKey(), true).clear();
+        return new Watermark(safe.getKey(), safe.getValue());
+    }
+
+    // Sequence of the newest event begun so far
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public record Watermark(long sequence, BsonDocument token) {
+    }
+}
@@ -0,0 +1,115 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Holds writes for a short window and keeps only the final state per document: many replaces become
+// the last one, a delete supersedes whatever came before, an insert after a delete becomes an upsert.
+// Merged events stay in flight until their survivor is applied, so the checkpoint never passes an
+// open window. Not thread-safe: one owner thread.
+public class CoalescingBuffer {
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final long windowMs;
+    private final int maxEvents;
+    private final Consumer<ReplicationEvent> downstream;
+    private final ReplicationMetrics metrics;
+
+    private final Map<Key, ReplicationEvent> pending = new LinkedHashMap<>();
+    private long openedAt;
+
+    public CoalescingBuffer(long windowMs, int maxEvents, Consumer<ReplicationEvent> downstream, ReplicationMetrics metrics) {
+        this.windowMs = Math.max(0, windowMs);
+        this.maxEvents = Math.max(1, maxEvents);
+        this.downstream = downstream;
+        this.metrics = metrics;
+    }
+
+    public void add(ReplicationEvent event) {
+        if (event.documentKey() == null) {
+            downstream.accept(event);
+            return;
+        }
+        if (pending.isEmpty()) {
+            openedAt = System.currentTimeMillis();
+        }
+        Key key = new Key(event.namespace(), event.documentKey());
+        ReplicationEvent earlier = pending.get(key);
+        WriteModel<RawBsonDocument> merged = earlier != null ? merge(earlier.model(), event.model()) : null;
+        if (merged != null) {
+            // The document keeps its first-seen slot; only the order per document matters
+            pending.put(key, earlier.supersededBy(event, merged));
+            metrics.event(event.namespace().getDatabaseName(), event.namespace().getCollectionName(),
+                    ReplicationMetrics.COALESCED);
+        } else {
+            if (earlier != null) {
+                // Cannot be expressed as one write: apply the earlier one first
+                downstream.accept(pending.remove(key));
+            }
+            pending.put(key, event);
+        }
+        if (pending.size() >= maxEvents) {
+            flush();
+        }
+    }
+
+    public void flushIfDue() {
+        if (!pending.isEmpty() && System.currentTimeMillis() - openedAt >= windowMs) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (ReplicationEvent event : pending.values()) {
+            downstream.accept(event);
+        }
+        pending.clear();
+    }
+
+    // The single write equivalent to applying earlier then later, or null when there is none
+    private static WriteModel<RawBsonDocument> merge(WriteModel<RawBsonDocument> earlier,
+                                                     WriteModel<RawBsonDocument> later) {
+        if (later instanceof DeleteOneModel) {
+            // Insert then delete still deletes: a replay may already have written the insert to the target
+            return later;
+        }
+        if (later instanceof InsertOneModel<RawBsonDocument> insert
+                && earlier instanceof DeleteOneModel<RawBsonDocument> delete) {
+            return new ReplaceOneModel<>(delete.getFilter(), insert.getDocument(), UPSERT);
+        }
+        if (later instanceof ReplaceOneModel<RawBsonDocument> replace) {
+            if (earlier instanceof InsertOneModel) {
+                // Upsert rather than insert, so a replayed insert cannot leave the first version behind
+                return new ReplaceOneModel<>(replace.getFilter(), replace.getReplacement(), UPSERT);
+            }
+            if (earlier instanceof ReplaceOneModel<RawBsonDocument> previous) {
+                return previous.getReplaceOptions().isUpsert()
+                        ? new ReplaceOneModel<>(replace.getFilter(), replace.getReplacement(), UPSERT)
+                        : later;
+            }
+            if (earlier instanceof UpdateOneModel) {
+                return later;
+            }
+        }
+        // Delta updates after a write and anything else after a delete are applied as they came
+        return null;
+    }
+
+    private record Key(MongoNamespace namespace, BsonDocument documentKey) {
+    }
+}
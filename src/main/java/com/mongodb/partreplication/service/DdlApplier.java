@@ -0,0 +1,123 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.model.RenameCollectionOptions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.UnaryOperator;
+
+// Applies drop, rename and dropDatabase on the target. Callers make sure every earlier write has
+// landed first; the namespace cache is invalidated whatever the outcome. Events carry source
+// namespaces; databaseMapping gives their name on this target.
+@Slf4j
+public class DdlApplier {
+
+    private final String target;
+    private final MongoClient targetMongoClient;
+    private final TargetNamespaceCache namespaceCache;
+    private final ChangeEventDecoder decoder;
+    private final UnaryOperator<String> databaseMapping;
+    private final ReplicationMetrics metrics;
+
+    public DdlApplier(String target, MongoClient targetMongoClient, TargetNamespaceCache namespaceCache,
+                      ChangeEventDecoder decoder, UnaryOperator<String> databaseMapping, ReplicationMetrics metrics) {
+        this.target = target;
+        this.targetMongoClient = targetMongoClient;
+        this.namespaceCache = namespaceCache;
+        this.decoder = decoder;
+        this.databaseMapping = databaseMapping;
+        this.metrics = metrics;
+    }
+
+    public void apply(ChangeEventDecoder.Ddl ddl) {
+        switch (ddl.operationType()) {
+            case DROP:
+                handleDrop(map(ddl.namespace()));
+                break;
+            case RENAME:
+                handleRename(ddl.namespace(), ddl.destination());
+                break;
+            case DROP_DATABASE:
+                handleDropDatabase(databaseMapping.apply(ddl.database()));
+                break;
+            default:
+                log.warn("Not a DDL operation: {}", ddl.operationType());
+        }
+    }
+
+    private MongoNamespace map(MongoNamespace namespace) {
+        return namespace != null
+                ? new MongoNamespace(databaseMapping.apply(namespace.getDatabaseName()), namespace.getCollectionName())
+                : null;
+    }
+
+    private void handleDrop(MongoNamespace namespace) {
+        try {
+            targetMongoClient.getDatabase(namespace.getDatabaseName())
+                    .getCollection(namespace.getCollectionName())
+                    .drop();
+            log.info("Dropped collection {}", namespace);
+        } catch (Exception e) {
+            log.error("Failed to drop collection {}: {}", namespace, e.getMessage(), e);
+        } finally {
+            namespaceCache.invalidate(namespace);
+        }
+    }
+
+    private void handleRename(MongoNamespace sourceFrom, MongoNamespace sourceTo) {
+        MongoNamespace from = map(sourceFrom);
+        MongoNamespace to = map(sourceTo);
+        if (!decoder.isReplicated(sourceFrom)) {
+            handleRenameIn(sourceFrom, to);
+            return;
+        }
+        try {
+            if (sourceTo != null && decoder.isReplicated(sourceTo)) {
+                targetMongoClient.getDatabase(from.getDatabaseName())
+                        .getCollection(from.getCollectionName())
+                        .renameCollection(to, new RenameCollectionOptions().dropTarget(true));
+                log.info("Renamed collection {} to {}", from, to);
+            } else {
+                // Renamed out of the replicated databases: it no longer exists as far as the target is concerned
+                targetMongoClient.getDatabase(from.getDatabaseName()).getCollection(from.getCollectionName()).drop();
+                log.info("Dropped collection {} renamed to non-replicated {}", from, to);
+            }
+        } catch (Exception e) {
+            log.error("Failed to rename collection {} to {}: {}", from, to, e.getMessage(), e);
+        } finally {
+            namespaceCache.invalidate(from);
+            if (to != null) {
+                namespaceCache.invalidate(to);
+            }
+        }
+    }
+
+    // The renamed collection was never replicated, so the target has nothing to rename and no stream event
+    // will ever carry its documents. Whatever the destination held before is replaced on the source, so it
+    // is dropped rather than left stale; the collection needs a resync (initial sync) to be copied, and
+    // is listed in the job status and counted by replication.resync.needed.
+    private void handleRenameIn(MongoNamespace sourceFrom, MongoNamespace to) {
+        metrics.resyncNeeded(target, to);
+        try {
+            targetMongoClient.getDatabase(to.getDatabaseName()).getCollection(to.getCollectionName()).drop();
+            log.warn("Collection {} was renamed into replicated {} from outside the replicated namespaces; "
+                    + "its documents are not on the target until it is resynced", sourceFrom, to);
+        } catch (Exception e) {
+            log.error("Failed to drop {} after a rename from {}; resync it: {}", to, sourceFrom, e.getMessage(), e);
+        } finally {
+            namespaceCache.invalidate(to);
+        }
+    }
+
+    private void handleDropDatabase(String database) {
+        try {
+            targetMongoClient.getDatabase(database).drop();
+            log.info("Dropped database {}", database);
+        } catch (Exception e) {
+            log.error("Failed to drop database {}: {}", database, e.getMessage(), e);
+        } finally {
+            namespaceCache.invalidateDatabase(database);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.TruncatedArray;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+
+import java.util.List;
+
+// Turns an update event's updateDescription into a $set/$unset/$push update for the target.
+// Returns null when the description cannot be expressed safely and a full replace is needed.
+public final class DeltaUpdateBuilder {
+
+    private DeltaUpdateBuilder() {
+    }
+
+    public static BsonDocument toUpdate(UpdateDescription description) {
+        if (description == null) {
+            return null;
+        }
+        // Field names containing dots or numeric keys make the dotted paths ambiguous
+        BsonDocument disambiguated = description.getDisambiguatedPaths();
+        if (disambiguated != null && !disambiguated.isEmpty()) {
+            return null;
+        }
+
+        BsonDocument updatedFields = description.getUpdatedFields();
+        List<String> removedFields = description.getRemovedFields();
+        List<TruncatedArray> truncatedArrays = description.getTruncatedArrays();
+
+        BsonDocument update = new BsonDocument();
+        if (updatedFields != null && !updatedFields.isEmpty()) {
+            for (String path : updatedFields.keySet()) {
+                if (!isSettablePath(path)) {
+                    return null;
+                }
+            }
+            update.append("$set", updatedFields);
+        }
+        if (removedFields != null && !removedFields.isEmpty()) {
+            BsonDocument unset = new BsonDocument();
+            for (String path : removedFields) {
+                if (!isSettablePath(path)) {
+                    return null;
+                }
+                unset.append(path, new BsonString(""));
+            }
+            update.append("$unset", unset);
+        }
+        if (truncatedArrays != null && !truncatedArrays.isEmpty()) {
+            BsonDocument push = new BsonDocument();
+            for (TruncatedArray truncated : truncatedArrays) {
+                // $push and $set on the same array path conflict in one update
+                if (touches(updatedFields != null ? updatedFields.keySet() : List.of(), truncated.getField())
+                        || touches(removedFields != null ? removedFields : List.of(), truncated.getField())) {
+                    return null;
+                }
+                push.append(truncated.getField(), new BsonDocument("$each", new BsonArray())
+                        .append("$slice", new BsonInt32(truncated.getNewSize())));
+            }
+            update.append("$push", push);
+        }
+        return update;
+    }
+
+    private static boolean isSettablePath(String path) {
+        for (String part : path.split("\\.", -1)) {
+            if (part.isEmpty() || part.startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean touches(Iterable<String> paths, String arrayField) {
+        for (String path : paths) {
+            if (path.equals(arrayField) || path.startsWith(arrayField + ".") || arrayField.startsWith(path + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
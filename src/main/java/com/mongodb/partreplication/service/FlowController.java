@@ -0,0 +1,164 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.FlowControlSettings;
+import com.mongodb.partreplication.dto.FlowControlStatusDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the apply stage from overrunning the target. Every bulkWrite first takes ops and bytes from
+// two token buckets (the configured ceilings) and a slot under the concurrent write limit. The batch
+// size and concurrency limits follow AIMD on observed bulkWrite latency: they grow step by step while
+// writes stay under the target latency, and are cut by decreaseFactor when a write is slow or fails.
+// One controller is shared by every stream and worker of a replication run.
+@Slf4j
+public class FlowController {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final FlowControlSettings settings;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final int maxConcurrency;
+    private final long targetLatencyNanos;
+    private final TokenBucket ops;
+    private final TokenBucket bytes;
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    private double batchSizeLimit;
+    private int concurrencyLimit;
+    private int inFlight;
+    private int successesSinceIncrease;
+    private long lastDecreaseAt;
+    private double latencyNanos;
+
+    // streams: how many change streams share the target, each with its own apply workers
+    public FlowController(FlowControlSettings settings, ApplySettings applySettings, int streams) {
+        this.settings = settings;
+        this.enabled = settings.isEnabled();
+        this.maxBatchSize = Math.max(1, applySettings.getBatchSize());
+        this.maxConcurrency = Math.max(1, applySettings.getWorkers() * Math.max(1, streams));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getTargetLatencyMs()));
+        this.ops = settings.getMaxOpsPerSecond() > 0 ? new TokenBucket(settings.getMaxOpsPerSecond()) : null;
+        this.bytes = settings.getMaxBytesPerSecond() > 0 ? new TokenBucket(settings.getMaxBytesPerSecond()) : null;
+        // Start wide open and back off once the target shows strain
+        this.batchSizeLimit = maxBatchSize;
+        this.concurrencyLimit = maxConcurrency;
+    }
+
+    public int getConcurrencyLimit() {
+        if (!enabled) {
+            return maxConcurrency;
+        }
+        synchronized (this) {
+            return concurrencyLimit;
+        }
+    }
+
+    public int getBatchSizeLimit() {
+        if (!enabled) {
+            return maxBatchSize;
+        }
+        synchronized (this) {
+            return (int) batchSizeLimit;
+        }
+    }
+
+    // Waits for rate and concurrency permits for one bulkWrite; pair with release()
+    public void acquire(List<? extends WriteModel<RawBsonDocument>> writes) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        synchronized (this) {
+            while (inFlight >= concurrencyLimit) {
+                wait();
+            }
+            inFlight++;
+        }
+        try {
+            if (ops != null) {
+                ops.take(writes.size());
+            }
+            if (bytes != null) {
+                bytes.take(bytesOf(writes));
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                inFlight--;
+                notifyAll();
+            }
+            throw e;
+        }
+        throttledNanos.addAndGet(System.nanoTime() - startedAt);
+    }
+
+    // Reports how the write went and adjusts the limits; overloaded is a failed write or a write concern error
+    public void release(long latencyNanos, boolean overloaded) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            inFlight--;
+            this.latencyNanos = this.latencyNanos == 0
+                    ? latencyNanos
+                    : this.latencyNanos + LATENCY_SMOOTHING * (latencyNanos - this.latencyNanos);
+            long now = System.nanoTime();
+            if (overloaded || latencyNanos > targetLatencyNanos) {
+                // Writes already in flight report the same strain; cut once per latency window
+                if (now - lastDecreaseAt >= targetLatencyNanos) {
+                    lastDecreaseAt = now;
+                    batchSizeLimit = Math.max(Math.min(settings.getMinBatchSize(), maxBatchSize),
+                            batchSizeLimit * settings.getDecreaseFactor());
+                    concurrencyLimit = Math.max(1, (int) (concurrencyLimit * settings.getDecreaseFactor()));
+                    successesSinceIncrease = 0;
+                    log.debug("Target under strain (latency {} ms, overloaded={}); limits cut to batch {} x {} writers",
+                            TimeUnit.NANOSECONDS.toMillis(latencyNanos), overloaded, (int) batchSizeLimit, concurrencyLimit);
+                }
+            } else {
+                batchSizeLimit = Math.min(maxBatchSize, batchSizeLimit + Math.max(1, maxBatchSize / 20));
+                // One more concurrent writer per round of successful writes at the current concurrency
+                if (++successesSinceIncrease >= concurrencyLimit && concurrencyLimit < maxConcurrency) {
+                    concurrencyLimit++;
+                    successesSinceIncrease = 0;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    public FlowControlStatusDTO toStatus() {
+        synchronized (this) {
+            return FlowControlStatusDTO.builder()
+                    .enabled(enabled)
+                    .maxOpsPerSecond(settings.getMaxOpsPerSecond())
+                    .maxBytesPerSecond(settings.getMaxBytesPerSecond())
+                    .batchSizeLimit(getBatchSizeLimit())
+                    .concurrencyLimit(getConcurrencyLimit())
+                    .inFlightWrites(inFlight)
+                    .latencyMs(latencyNanos / 1_000_000.0)
+                    .throttledMs(TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()))
+                    .build();
+        }
+    }
+
+    // Document bytes of the inserts and replaces; updates and deletes are small and not counted
+    static long bytesOf(List<? extends WriteModel<RawBsonDocument>> writes) {
+        long total = 0;
+        for (WriteModel<RawBsonDocument> write : writes) {
+            if (write instanceof InsertOneModel<RawBsonDocument> insert) {
+                total += insert.getDocument().getByteBuffer().remaining();
+            } else if (write instanceof ReplaceOneModel<RawBsonDocument> replace) {
+                total += replace.getReplacement().getByteBuffer().remaining();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mongodb.partreplication.service;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+// A slice of a collection by _id: [lower, upper) where a missing bound is open. Because range
+// operators only compare within one BSON type bracket, a split collection also gets a catch-all
+// range matching every _id whose type differs from the sampled one.
+public record IdRange(BsonValue lower, BsonValue upper, BsonValue excludedType) {
+
+    public static IdRange all() {
+        return new IdRange(null, null, null);
+    }
+
+    public static IdRange between(BsonValue lower, BsonValue upper) {
+        return new IdRange(lower, upper, null);
+    }
+
+    public static IdRange otherThan(BsonValue type) {
+        return new IdRange(null, null, type);
+    }
+
+    public boolean isCatchAll() {
+        return excludedType != null;
+    }
+
+    public BsonDocument toFilter() {
+        if (excludedType != null) {
+            return new BsonDocument("_id", new BsonDocument("$not", new BsonDocument("$type", excludedType)));
+        }
+        BsonDocument bounds = new BsonDocument();
+        if (lower != null) {
+            bounds.append("$gte", lower);
+        }
+        if (upper != null) {
+            bounds.append("$lt", upper);
+        }
+        return bounds.isEmpty() ? new BsonDocument() : new BsonDocument("_id", bounds);
+    }
+
+    @Override
+    public String toString() {
+        return toFilter().toJson();
+    }
+}
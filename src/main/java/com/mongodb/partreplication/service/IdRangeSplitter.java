@@ -0,0 +1,78 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits a collection into roughly equal _id ranges from a $sample of its keys
+public final class IdRangeSplitter {
+
+    private static final int SAMPLES_PER_RANGE = 10;
+    private static final long MIN_DOCUMENTS_PER_RANGE = 1000;
+
+    private IdRangeSplitter() {
+    }
+
+    public static List<IdRange> split(MongoCollection<BsonDocument> collection, int ranges) {
+        return split(collection, IdRange.all(), ranges, collection.estimatedDocumentCount());
+    }
+
+    // Splits one range further; used to drill down into a mismatched range
+    public static List<IdRange> split(MongoCollection<BsonDocument> collection, IdRange range, int ranges, long documents) {
+        if (ranges <= 1 || range.isCatchAll() || documents < ranges * MIN_DOCUMENTS_PER_RANGE) {
+            return List.of(range);
+        }
+
+        List<BsonValue> ids = new ArrayList<>();
+        for (BsonDocument sample : collection.aggregate(List.of(
+                Aggregates.match(range.toFilter()),
+                Aggregates.sample(ranges * SAMPLES_PER_RANGE),
+                Aggregates.project(Projections.include("_id")),
+                Aggregates.sort(Sorts.ascending("_id"))))) {
+            ids.add(sample.get("_id"));
+        }
+        if (ids.size() < ranges) {
+            return List.of(range);
+        }
+        BsonValue typeAlias = typeAlias(ids.get(0).getBsonType());
+        for (BsonValue id : ids) {
+            if (!typeAlias.equals(typeAlias(id.getBsonType()))) {
+                // Mixed _id types cannot be split by range comparisons
+                return List.of(range);
+            }
+        }
+
+        List<IdRange> result = new ArrayList<>();
+        BsonValue lower = range.lower();
+        for (int i = 1; i < ranges; i++) {
+            BsonValue boundary = ids.get(i * ids.size() / ranges);
+            if (lower != null && lower.equals(boundary)) {
+                continue;
+            }
+            result.add(IdRange.between(lower, boundary));
+            lower = boundary;
+        }
+        result.add(IdRange.between(lower, range.upper()));
+        if (range.lower() == null && range.upper() == null) {
+            result.add(IdRange.otherThan(typeAlias));
+        }
+        return result;
+    }
+
+    // Numeric types compare with each other, so they share the "number" alias
+    private static BsonValue typeAlias(BsonType type) {
+        return switch (type) {
+            case INT32, INT64, DOUBLE, DECIMAL128 -> new BsonString("number");
+            default -> new BsonInt32(type.getValue());
+        };
+    }
+}
@@ -0,0 +1,282 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.configuration.ReplicationExecutor;
+import com.mongodb.partreplication.dto.InitialSyncSettings;
+import com.mongodb.partreplication.dto.InitialSyncStatusDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Seeds the target with the included databases: captures the source operation time, copies every
+// collection in concurrent _id ranges, builds indexes after the bulk load, then hands off to the
+// change stream from the captured time. Copy and replay overlap, so duplicates are expected and ignored.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InitialSyncService {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int NAMESPACE_EXISTS = 48;
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    private final MongoClient sourceMongoClient;
+    private final MongoClient targetMongoClient;
+    private final MongoProperties mongoProperties;
+    private final ReplicationExecutor replicationExecutor;
+    private final PartReplicationService partReplicationService;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger collectionsTotal = new AtomicInteger();
+    private final AtomicInteger collectionsDone = new AtomicInteger();
+    private final AtomicInteger rangesTotal = new AtomicInteger();
+    private final AtomicInteger rangesDone = new AtomicInteger();
+    private final AtomicLong documentsEstimated = new AtomicLong();
+    private final AtomicLong documentsCopied = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String state = "IDLE";
+    private volatile String message;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile BsonTimestamp operationTime;
+
+    public synchronized void startInitialSync() {
+        if (partReplicationService.isRunning()) {
+            throw new IllegalStateException("Stop replication before running an initial sync");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Initial sync is already running");
+        }
+        reset();
+        replicationExecutor.getInitialSyncExecutorService().submit(() -> {
+            try {
+                runInitialSync();
+            } catch (Exception e) {
+                log.error("Initial sync failed", e);
+                state = "ERROR";
+                message = e.getMessage();
+            } finally {
+                finishedAt = Instant.now();
+                running.set(false);
+            }
+        });
+    }
+
+    public InitialSyncStatusDTO getStatus() {
+        return InitialSyncStatusDTO.builder()
+                .state(state)
+                .startedAt(startedAt != null ? startedAt.toString() : null)
+                .finishedAt(finishedAt != null ? finishedAt.toString() : null)
+                .operationTime(operationTime != null ? operationTime.toString() : null)
+                .collectionsTotal(collectionsTotal.get())
+                .collectionsDone(collectionsDone.get())
+                .rangesTotal(rangesTotal.get())
+                .rangesDone(rangesDone.get())
+                .documentsEstimated(documentsEstimated.get())
+                .documentsCopied(documentsCopied.get())
+                .errors(errors.get())
+                .message(message)
+                .build();
+    }
+
+    private void runInitialSync() throws Exception {
+        InitialSyncSettings settings = mongoProperties.getInitialSync();
+        // Captured before the first read so the change stream covers every write made during the copy
+        operationTime = currentOperationTime();
+        log.info("Initial sync started at source operation time {}", operationTime);
+
+        ChangeStreamPipelineBuilder filter = new ChangeStreamPipelineBuilder(mongoProperties.getIncludeDatabases(),
+                mongoProperties.getIgnoreDatabases(), mongoProperties.getFilter());
+        List<String> collections = new ArrayList<>();
+        for (String database : mongoProperties.getIncludeDatabases()) {
+            if (mongoProperties.getIgnoreDatabases().contains(database)) {
+                continue;
+            }
+            for (BsonDocument info : sourceMongoClient.getDatabase(database)
+                    .listCollections(BsonDocument.class)
+                    .filter(Filters.eq("type", "collection"))) {
+                String name = info.getString("name").getValue();
+                if (!name.startsWith("system.") && filter.matchesCollection(database, name)) {
+                    collections.add(database + "." + name);
+                }
+            }
+        }
+        collectionsTotal.set(collections.size());
+
+        state = "COPYING";
+        ExecutorService copyPool = Executors.newFixedThreadPool(Math.max(1, settings.getThreads()));
+        try {
+            List<Future<?>> copies = new ArrayList<>();
+            for (String namespace : collections) {
+                int dot = namespace.indexOf('.');
+                String database = namespace.substring(0, dot);
+                String collection = namespace.substring(dot + 1);
+                MongoCollection<BsonDocument> source = sourceMongoClient.getDatabase(database)
+                        .getCollection(collection, BsonDocument.class);
+                createTargetCollection(database, collection);
+                documentsEstimated.addAndGet(source.estimatedDocumentCount());
+                List<IdRange> ranges = IdRangeSplitter.split(source, settings.getRangesPerCollection());
+                rangesTotal.addAndGet(ranges.size());
+                log.info("Copying {} in {} ranges", namespace, ranges.size());
+                for (IdRange range : ranges) {
+                    copies.add(copyPool.submit(() -> copyRange(database, collection, range, settings.getBatchSize())));
+                }
+            }
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } finally {
+            copyPool.shutdown();
+        }
+
+        state = "BUILDING_INDEXES";
+        for (String namespace : collections) {
+            int dot = namespace.indexOf('.');
+            buildIndexes(namespace.substring(0, dot), namespace.substring(dot + 1));
+            collectionsDone.incrementAndGet();
+        }
+
+        partReplicationService.setStartAtOperationTime(operationTime);
+        message = "Copied " + documentsCopied.get() + " documents; change stream starts at " + operationTime;
+        if (errors.get() > 0) {
+            // Leave it to the operator to decide whether to re-run or start replication anyway
+            state = "COMPLETED_WITH_ERRORS";
+            log.warn("Initial sync completed with {} errors: {}", errors.get(), message);
+            return;
+        }
+        state = "COMPLETED";
+        log.info("Initial sync completed: {}", message);
+        if (settings.isStartReplication()) {
+            partReplicationService.startReplication();
+        }
+    }
+
+    private BsonTimestamp currentOperationTime() {
+        BsonDocument hello = sourceMongoClient.getDatabase("admin")
+                .runCommand(new BsonDocument("hello", new BsonInt32(1)), BsonDocument.class);
+        if (hello.isTimestamp("operationTime")) {
+            return hello.getTimestamp("operationTime");
+        }
+        if (hello.isDocument("lastWrite") && hello.getDocument("lastWrite").isDocument("opTime")) {
+            return hello.getDocument("lastWrite").getDocument("opTime").getTimestamp("ts");
+        }
+        throw new IllegalStateException("Source did not report an operation time; is it a replica set?");
+    }
+
+    private void createTargetCollection(String database, String collection) {
+        try {
+            targetMongoClient.getDatabase(database).createCollection(collection);
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != NAMESPACE_EXISTS) {
+                throw e;
+            }
+        }
+    }
+
+    // Documents travel as raw BSON: nothing is decoded between the source cursor and the insert
+    private void copyRange(String database, String collection, IdRange range, int batchSize) {
+        MongoCollection<RawBsonDocument> source = sourceMongoClient.getDatabase(database)
+                .getCollection(collection, RawBsonDocument.class);
+        MongoCollection<RawBsonDocument> target = targetMongoClient.getDatabase(database)
+                .getCollection(collection, RawBsonDocument.class);
+        List<RawBsonDocument> batch = new ArrayList<>(batchSize);
+        try (MongoCursor<RawBsonDocument> cursor = source.find(range.toFilter()).batchSize(batchSize).cursor()) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    insertBatch(target, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                insertBatch(target, batch);
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.error("Failed to copy range {} of {}.{}: {}", range, database, collection, e.getMessage(), e);
+        } finally {
+            rangesDone.incrementAndGet();
+        }
+    }
+
+    private void insertBatch(MongoCollection<RawBsonDocument> target, List<RawBsonDocument> batch) {
+        try {
+            target.insertMany(batch, UNORDERED);
+            documentsCopied.addAndGet(batch.size());
+        } catch (MongoBulkWriteException e) {
+            long failed = 0;
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    failed++;
+                    log.error("Failed to copy document into {}: {}", target.getNamespace(), error.getMessage());
+                }
+            }
+            errors.addAndGet(failed);
+            documentsCopied.addAndGet(batch.size() - e.getWriteErrors().size());
+        }
+    }
+
+    private void buildIndexes(String database, String collection) {
+        BsonArray indexes = new BsonArray();
+        for (BsonDocument index : sourceMongoClient.getDatabase(database).getCollection(collection)
+                .listIndexes(BsonDocument.class)) {
+            if ("_id_".equals(index.getString("name").getValue())) {
+                continue;
+            }
+            index.remove("v");
+            index.remove("ns");
+            indexes.add(index);
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+        MongoDatabase target = targetMongoClient.getDatabase(database);
+        try {
+            target.runCommand(new BsonDocument("createIndexes", new BsonString(collection)).append("indexes", indexes));
+            log.info("Built {} indexes on {}.{}", indexes.size(), database, collection);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.error("Failed to build indexes on {}.{}: {}", database, collection, e.getMessage(), e);
+        }
+    }
+
+    private void reset() {
+        state = "STARTING";
+        message = null;
+        startedAt = Instant.now();
+        finishedAt = null;
+        operationTime = null;
+        collectionsTotal.set(0);
+        collectionsDone.set(0);
+        rangesTotal.set(0);
+        rangesDone.set(0);
+        documentsEstimated.set(0);
+        documentsCopied.set(0);
+        errors.set(0);
+    }
+}
@@ -0,0 +1,197 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClient;
+import com.mongodb.partreplication.dto.ApplySettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Hashes events by namespace and document key onto N worker queues. Events for one document always
+// land on the same worker, so per-document order is kept while independent documents apply concurrently.
+@Slf4j
+public class PartitionedApplyEngine {
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final ExecutorService executorService;
+    private final CheckpointTracker checkpointTracker;
+    private final long pollIntervalMs;
+    private volatile boolean running;
+
+    public PartitionedApplyEngine(String target, MongoClient targetMongoClient, ApplySettings settings,
+                                  long retryBackoffMs, ExecutorService executorService,
+                                  Consumer<MongoNamespace> collectionInitializer,
+                                  CheckpointTracker checkpointTracker, ReplicationMetrics metrics,
+                                  FlowController flowController) {
+        this.executorService = executorService;
+        this.checkpointTracker = checkpointTracker;
+        this.pollIntervalMs = Math.max(1, settings.getFlushIntervalMs());
+        int workerCount = Math.max(1, settings.getWorkers());
+        int queueCapacity = Math.max(1, settings.getQueueCapacity());
+        for (int i = 0; i < workerCount; i++) {
+            BulkWriteApplier applier = new BulkWriteApplier(target, targetMongoClient, settings.getBatchSize(),
+                    settings.getFlushIntervalMs(), collectionInitializer, this::batchCompleted, metrics,
+                    retryBackoffMs, settings.getMaxRetryBackoffMs(), () -> running,
+                    flowController);
+            // A zero window turns coalescing off: events go straight to the applier
+            CoalescingBuffer coalescer = settings.getCoalesceWindowMs() > 0
+                    ? new CoalescingBuffer(settings.getCoalesceWindowMs(), settings.getCoalesceMaxEvents(), applier::add, metrics)
+                    : null;
+            workers.add(new Worker(i, new ArrayBlockingQueue<>(queueCapacity), applier, coalescer));
+        }
+    }
+
+    // All workers or none: when the pool has no thread left, the workers already started are stopped again
+    public void start() {
+        running = true;
+        try {
+            for (Worker worker : workers) {
+                worker.future = executorService.submit(worker::run);
+            }
+        } catch (RejectedExecutionException e) {
+            stop();
+            throw e;
+        }
+        log.info("Started {} apply workers", workers.size());
+    }
+
+    // Blocks when the worker queue is full, which holds back the change stream reader
+    public void dispatch(ReplicationEvent event) throws InterruptedException {
+        workers.get(partition(event)).queue.put(new Apply(event));
+    }
+
+    // Non-blocking variant of dispatch; false when the worker queue is full
+    public boolean tryDispatch(ReplicationEvent event) {
+        return workers.get(partition(event)).queue.offer(new Apply(event));
+    }
+
+    // Returns once every event dispatched so far has been applied; used before DDL such as drop
+    public void awaitDrained() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(workers.size());
+        for (Worker worker : workers) {
+            worker.queue.put(new Barrier(latch));
+        }
+        latch.await();
+    }
+
+    // Lets every worker drain its queue and flush its last batch
+    public void stop() {
+        running = false;
+        for (Worker worker : workers) {
+            if (worker.future == null) {
+                continue;
+            }
+            try {
+                worker.future.get();
+            } catch (Exception e) {
+                log.error("Apply worker {} did not stop cleanly: {}", worker.id, e.getMessage(), e);
+            }
+        }
+        log.info("Stopped {} apply workers", workers.size());
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    public long getAppliedCount() {
+        return workers.stream().mapToLong(worker -> worker.applier.getAppliedCount()).sum();
+    }
+
+    public long getFailedCount() {
+        return workers.stream().mapToLong(worker -> worker.applier.getFailedCount()).sum();
+    }
+
+    private int partition(ReplicationEvent event) {
+        return Math.floorMod(Objects.hash(event.namespace().getFullName(), event.documentKey()), workers.size());
+    }
+
+    private void batchCompleted(List<ReplicationEvent> batch) {
+        for (ReplicationEvent event : batch) {
+            for (long coalesced : event.coalescedSequences()) {
+                checkpointTracker.complete(coalesced);
+            }
+            checkpointTracker.complete(event.sequence());
+        }
+    }
+
+    private sealed interface WorkItem permits Apply, Barrier {
+    }
+
+    private record Apply(ReplicationEvent event) implements WorkItem {
+    }
+
+    private record Barrier(CountDownLatch latch) implements WorkItem {
+    }
+
+    private class Worker {
+        private final int id;
+        private final BlockingQueue<WorkItem> queue;
+        private final BulkWriteApplier applier;
+        private final CoalescingBuffer coalescer;
+        private Future<?> future;
+
+        Worker(int id, BlockingQueue<WorkItem> queue, BulkWriteApplier applier, CoalescingBuffer coalescer) {
+            this.id = id;
+            this.queue = queue;
+            this.applier = applier;
+            this.coalescer = coalescer;
+        }
+
+        void run() {
+            try {
+                while (running || !queue.isEmpty()) {
+                    WorkItem item = queue.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    try {
+                        if (item instanceof Apply apply) {
+                            if (coalescer != null) {
+                                coalescer.add(apply.event());
+                            } else {
+                                applier.add(apply.event());
+                            }
+                        } else if (item instanceof Barrier barrier) {
+                            flushAll();
+                            barrier.latch().countDown();
+                        }
+                        if (coalescer != null) {
+                            coalescer.flushIfDue();
+                        }
+                        applier.flushIfDue();
+                    } catch (Exception e) {
+                        log.error("Apply worker {} failed to process item: {}", id, e.getMessage(), e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Apply worker {} interrupted with {} queued items", id, queue.size());
+            } finally {
+                flushAll();
+            }
+        }
+
+        private void flushAll() {
+            if (coalescer != null) {
+                coalescer.flush();
+            }
+            applier.flush();
+        }
+    }
+}
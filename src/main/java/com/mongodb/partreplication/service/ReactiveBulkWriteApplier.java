@@ -0,0 +1,200 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoClient;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Reactive counterpart of BulkWriteApplier: writes a batch as ordered bulkWrites per run of
+// namespace, resumes after a failed write, and treats replayed inserts as already applied. A bulkWrite
+// the target rejects as a whole is retried with backoff while replication runs; on shutdown the rest
+// of the batch is left uncompleted, so the checkpoint never passes writes that did not land.
+@Slf4j
+public class ReactiveBulkWriteApplier {
+
+    private static final BulkWriteOptions ORDERED = new BulkWriteOptions().ordered(true);
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoClient targetMongoClient;
+    private final TargetNamespaceCache namespaceCache;
+    private final Consumer<List<ReplicationEvent>> batchCompleted;
+    private final ReplicationMetrics metrics;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    private final BooleanSupplier retrying;
+
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile boolean abandoned;
+
+    public ReactiveBulkWriteApplier(MongoClient targetMongoClient, TargetNamespaceCache namespaceCache,
+                                    Consumer<List<ReplicationEvent>> batchCompleted, ReplicationMetrics metrics,
+                                    long retryBackoffMs, long maxRetryBackoffMs, BooleanSupplier retrying) {
+        this.targetMongoClient = targetMongoClient;
+        this.namespaceCache = namespaceCache;
+        this.batchCompleted = batchCompleted;
+        this.metrics = metrics;
+        this.retryBackoff = Duration.ofMillis(Math.max(1, retryBackoffMs));
+        this.maxRetryBackoff = Duration.ofMillis(Math.max(retryBackoffMs, maxRetryBackoffMs));
+        this.retrying = retrying;
+    }
+
+    public Mono<Void> apply(List<ReplicationEvent> batch) {
+        if (abandoned) {
+            // An earlier batch was left unapplied on shutdown; what follows it is read again after restart
+            return Mono.empty();
+        }
+        return Flux.fromIterable(runsByNamespace(batch))
+                .concatMap(run -> ensureExists(run.get(0).namespace()).then(write(run.get(0).namespace(), run)))
+                .then(Mono.fromRunnable(() -> batchCompleted.accept(batch)))
+                .onErrorResume(Abandoned.class, e -> Mono.fromRunnable(() -> abandon(batch, e.first)));
+    }
+
+    // True once a batch has been left unapplied on shutdown
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    // The namespace cache creates collections on the blocking client; that happens once per namespace
+    private Mono<Void> ensureExists(MongoNamespace namespace) {
+        if (namespaceCache.contains(namespace)) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> namespaceCache.ensureExists(namespace))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private Mono<Void> write(MongoNamespace namespace, List<ReplicationEvent> events) {
+        if (events.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return Mono.from(targetMongoClient.getDatabase(namespace.getDatabaseName())
+                            .getCollection(namespace.getCollectionName(), RawBsonDocument.class)
+                            .bulkWrite(models(events), ORDERED))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, retryBackoff)
+                            .maxBackoff(maxRetryBackoff)
+                            .filter(e -> !(e instanceof MongoBulkWriteException) && retrying.getAsBoolean())
+                            .doBeforeRetry(signal -> log.warn("bulkWrite of {} writes in {} failed (attempt {}), "
+                                    + "retrying: {}", events.size(), namespace, signal.totalRetries() + 1,
+                                    signal.failure().getMessage())))
+                    .doOnNext(result -> recordApplied(namespace, events, startedAt))
+                    .then()
+                    .onErrorResume(e -> recover(namespace, events, startedAt, e));
+        });
+    }
+
+    private Mono<Void> recover(MongoNamespace namespace, List<ReplicationEvent> events, long startedAt, Throwable e) {
+        if (!(e instanceof MongoBulkWriteException bulkError)) {
+            // Still rejected as a whole (network, auth, ...) once replication stopped retrying
+            return Mono.error(new Abandoned(events.get(0)));
+        }
+        if (bulkError.getWriteErrors().isEmpty()) {
+            // Only a write concern error: the writes themselves were applied
+            log.warn("bulkWrite in {} reported write concern error: {}", namespace, bulkError.getWriteConcernError());
+            recordApplied(namespace, events, startedAt);
+            return Mono.empty();
+        }
+        // Ordered bulk writes stop at the first error; record it and resume right after it
+        BulkWriteError error = bulkError.getWriteErrors().get(0);
+        ReplicationEvent failed = events.get(error.getIndex());
+        if (error.getCode() == DUPLICATE_KEY && failed.model() instanceof InsertOneModel) {
+            // Replayed insert after resuming from an older checkpoint: the document is already there
+            recordApplied(namespace, events.subList(0, error.getIndex() + 1), startedAt);
+        } else {
+            recordApplied(namespace, events.subList(0, error.getIndex()), startedAt);
+            recordFailure(namespace, failed, error.getCode(), error.getMessage());
+        }
+        return write(namespace, events.subList(error.getIndex() + 1, events.size()));
+    }
+
+    // Completes only what was applied, so the checkpoint stays before the rest
+    private void abandon(List<ReplicationEvent> batch, ReplicationEvent first) {
+        int applied = 0;
+        while (applied < batch.size() && batch.get(applied) != first) {
+            applied++;
+        }
+        log.warn("Leaving {} unapplied writes on shutdown; they are read again after restart", batch.size() - applied);
+        abandoned = true;
+        batchCompleted.accept(batch.subList(0, applied));
+    }
+
+    private static List<List<ReplicationEvent>> runsByNamespace(List<ReplicationEvent> batch) {
+        List<List<ReplicationEvent>> runs = new ArrayList<>();
+        List<ReplicationEvent> run = null;
+        for (ReplicationEvent event : batch) {
+            if (run == null || !run.get(0).namespace().equals(event.namespace())) {
+                run = new ArrayList<>();
+                runs.add(run);
+            }
+            run.add(event);
+        }
+        return runs;
+    }
+
+    private static List<WriteModel<RawBsonDocument>> models(List<ReplicationEvent> events) {
+        List<WriteModel<RawBsonDocument>> models = new ArrayList<>(events.size());
+        for (ReplicationEvent event : events) {
+            models.add(event.model());
+        }
+        return models;
+    }
+
+    private void recordApplied(MongoNamespace ns, List<ReplicationEvent> events, long startedAtNanos) {
+        appliedCount.addAndGet(events.size());
+        metrics.applyLatency(ReplicationTarget.DEFAULT, ns, System.nanoTime() - startedAtNanos);
+        if (events.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ReplicationEvent event : events) {
+            metrics.applied(ReplicationTarget.DEFAULT, ns, event.change(), now);
+        }
+        metrics.event(ns.getDatabaseName(), ns.getCollectionName(), ReplicationMetrics.APPLIED, events.size());
+    }
+
+    // The first write of a batch that was never applied
+    private static final class Abandoned extends RuntimeException {
+        private final ReplicationEvent first;
+
+        Abandoned(ReplicationEvent first) {
+            super(null, null, false, false);
+            this.first = first;
+        }
+    }
+
+    private void recordFailure(MongoNamespace ns, ReplicationEvent event, int code, String message) {
+        failedCount.incrementAndGet();
+        metrics.event(ns.getDatabaseName(), ns.getCollectionName(), ReplicationMetrics.FAILED);
+        log.error("Failed to apply {} in {}: seq={}, documentKey={}, code={}, error={}",
+                event.change().getOperationType(), ns, event.sequence(),
+                event.documentKey() != null ? event.documentKey().toJson() : null, code, message);
+    }
+}
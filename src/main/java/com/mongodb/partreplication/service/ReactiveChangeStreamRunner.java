@@ -0,0 +1,324 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.StreamStatusDTO;
+import com.mongodb.reactivestreams.client.ChangeStreamPublisher;
+import com.mongodb.reactivestreams.client.MongoClient;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Reactive engine for one change stream: watch() as a Publisher, decoded in stream order, hashed onto
+// apply.workers groups that each keep one bulkWrite in flight. Demand flows back from the writes, so a
+// slow target slows the cursor without parking a thread per stream or per write.
+@Slf4j
+public class ReactiveChangeStreamRunner implements StreamRunner {
+
+    private static final long STOP_POLL_MS = 100;
+    private static final long IDLE_POLL_MS = 10;
+    private static final long DEFAULT_RETRY_BACKOFF_MS = 1000;
+
+    @Getter
+    private final String name;
+    private final String database;  // null for the cluster-wide stream
+    private final ReplicationContext context;
+    private final MongoProperties mongoProperties;
+    private final ReplicationMetrics metrics;
+    private final MongoClient sourceMongoClient;
+
+    @Getter
+    private volatile PartReplicationService.ReplicationStatus status = PartReplicationService.ReplicationStatus.STOPPED;
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile CheckpointTracker checkpointTracker;
+    private volatile ReactiveBulkWriteApplier applier;
+    private CheckpointManager checkpointManager;
+    private BsonDocument resumeToken;
+    private BsonTimestamp startAt;
+
+    public ReactiveChangeStreamRunner(String database, ReplicationContext context) {
+        this.database = database;
+        this.name = database != null ? database : ChangeStreamRunner.CLUSTER;
+        this.context = context;
+        this.mongoProperties = context.getMongoProperties();
+        this.metrics = context.getMetrics();
+        this.sourceMongoClient = context.getReactiveMongoClients().getSource();
+    }
+
+    @Override
+    public Future<?> start(Runnable onStopped) {
+        status = PartReplicationService.ReplicationStatus.STARTING;
+        return Mono.fromRunnable(this::init)
+                // Loading the token and creating the history collection are one-off blocking calls
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.defer(this::replicate))
+                .doOnSuccess(done -> {
+                    log.info("Replication stopped for stream {}", name);
+                    status = PartReplicationService.ReplicationStatus.STOPPED;
+                })
+                .onErrorResume(e -> {
+                    log.error("Fatal error in change stream {}", name, e);
+                    status = PartReplicationService.ReplicationStatus.ERROR;
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    if (status != PartReplicationService.ReplicationStatus.ERROR) {
+                        status = PartReplicationService.ReplicationStatus.STOPPED;
+                    }
+                    onStopped.run();
+                })
+                .toFuture();
+    }
+
+    @Override
+    public int getReadBufferDepth() {
+        return buffered.get();
+    }
+
+    // The reactive engine has no spill journal
+    @Override
+    public long getJournalBacklogBytes() {
+        return 0;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        CheckpointTracker tracker = checkpointTracker;
+        return tracker != null ? tracker.inFlightCount() : 0;
+    }
+
+    @Override
+    public StreamStatusDTO toStatus() {
+        ReactiveBulkWriteApplier current = applier;
+        return StreamStatusDTO.builder()
+                .name(name)
+                .status(status.name())
+                .tokenKey(ChangeStreamRunner.tokenKey(context.getTokenKey(), database))
+                .readBufferDepth(getReadBufferDepth())
+                .queueDepth(getQueueDepth())
+                .inFlight(getInFlight())
+                .eventsApplied(current != null ? current.getAppliedCount() : 0)
+                .eventsFailed(current != null ? current.getFailedCount() : 0)
+                .build();
+    }
+
+    private void init() {
+        checkpointTracker = new CheckpointTracker();
+        checkpointManager = new CheckpointManager(context.getTargetMongoClient(), mongoProperties.getTokenCollection(),
+                mongoProperties.getCheckpoint(), ChangeStreamRunner.tokenKey(context.getTokenKey(), database),
+                metrics);
+        checkpointManager.initHistory();
+        applier = new ReactiveBulkWriteApplier(context.getReactiveMongoClients().getTarget(), context.getNamespaceCache(),
+                this::batchCompleted, metrics, retryBackoffMs(), mongoProperties.getApply().getMaxRetryBackoffMs(),
+                () -> context.getRunning().get());
+        resumeToken = checkpointManager.load();
+        startAt = resumeToken == null ? checkpointManager.loadStartAtOperationTime() : null;
+        buffered.set(0);
+        queued.set(0);
+    }
+
+    private Mono<Void> replicate() {
+        ApplySettings settings = mongoProperties.getApply();
+        int workers = Math.max(1, settings.getWorkers());
+        Duration flushInterval = Duration.ofMillis(Math.max(1, settings.getFlushIntervalMs()));
+        status = PartReplicationService.ReplicationStatus.RUNNING;
+
+        // Checkpoints move on a timer, off the event path; the manager decides when to persist
+        Disposable checkpoints = Flux.interval(flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> checkpoint())
+                .subscribe();
+
+        return changeStream()
+                .limitRate(Math.max(1, mongoProperties.getStreams().getBufferCapacity()))
+                .takeUntilOther(stopSignal())
+                .doOnNext(change -> buffered.incrementAndGet())
+                .concatMap(this::decode)
+                .groupBy(this::partition)
+                .flatMap(partition -> partition
+                        .bufferTimeout(Math.max(1, settings.getBatchSize()), flushInterval, true)
+                        .concatMap(batch -> {
+                            queued.addAndGet(-batch.size());
+                            return applier.apply(batch);
+                        }), workers)
+                .then(Mono.defer(() -> checkpoint().then(Mono.fromRunnable(checkpointManager::flush)
+                        .subscribeOn(Schedulers.boundedElastic()))))
+                .doFinally(signal -> checkpoints.dispose());
+    }
+
+    // Reopens past an invalidate, which a database stream sees when its database is dropped
+    private Flux<ChangeStreamDocument<RawBsonDocument>> changeStream() {
+        AtomicReference<BsonDocument> startAfter = new AtomicReference<>();
+        return Flux.defer(() -> Flux.from(createChangeStream(startAfter.getAndSet(null))))
+                .doOnNext(change -> {
+                    if (change.getOperationType() == OperationType.INVALIDATE) {
+                        log.info("Change stream {} invalidated; reopening", name);
+                        startAfter.set(change.getResumeToken());
+                    }
+                })
+                // resumeAfter rejects an invalidate token, so it never reaches the checkpoint tracker
+                .filter(change -> change.getOperationType() != OperationType.INVALIDATE)
+                .repeat(() -> startAfter.get() != null && context.getRunning().get());
+    }
+
+    private ChangeStreamPublisher<RawBsonDocument> createChangeStream(BsonDocument startAfter) {
+        List<Bson> pipeline = context.getPipelineBuilder().build();
+        List<String> scope = database != null ? List.of(database) : mongoProperties.getIncludeDatabases();
+        List<String> deltaDatabases = mongoProperties.getApply().getDeltaDatabases();
+        FullDocument fullDocument = !scope.isEmpty() && deltaDatabases.containsAll(scope)
+                ? FullDocument.DEFAULT
+                : FullDocument.UPDATE_LOOKUP;
+        long configuredAwait = mongoProperties.getStreams().getMaxAwaitTimeMs();
+        long maxAwaitMs = configuredAwait > 0
+                ? configuredAwait
+                : Math.max(1, Math.min(1000, mongoProperties.getApply().getFlushIntervalMs()));
+
+        ChangeStreamPublisher<RawBsonDocument> stream = (database != null
+                ? sourceMongoClient.getDatabase(database).watch(pipeline, RawBsonDocument.class)
+                : sourceMongoClient.watch(pipeline, RawBsonDocument.class))
+                .fullDocument(fullDocument)
+                // Delta updates need disambiguatedPaths, which only expanded events carry
+                .showExpandedEvents(!deltaDatabases.isEmpty())
+                .maxAwaitTime(maxAwaitMs, TimeUnit.MILLISECONDS);
+        int batchSize = mongoProperties.getStreams().getBatchSize();
+        if (batchSize > 0) {
+            stream = stream.batchSize(batchSize);
+        }
+
+        if (startAfter != null) {
+            return stream.startAfter(startAfter);
+        }
+        BsonDocument token = resumeToken;
+        BsonTimestamp operationTime = startAt;
+        resumeToken = null;
+        startAt = null;
+        if (token != null) {
+            log.info("Resuming reactive change stream {} with token: {}", name, token);
+            return stream.resumeAfter(token);
+        }
+        if (operationTime != null) {
+            log.info("Starting reactive change stream {} at operation time {} (initial sync handoff)", name, operationTime);
+            return stream.startAtOperationTime(operationTime);
+        }
+        log.info("Starting new reactive change stream {} without resume token", name);
+        return stream;
+    }
+
+    // Sequential, so sequence numbers follow stream order; emits only the events that write
+    private Mono<ReplicationEvent> decode(ChangeStreamDocument<RawBsonDocument> change) {
+        buffered.decrementAndGet();
+        String db = ChangeEventDecoder.databaseOf(change);
+        String collection = ChangeEventDecoder.collectionOf(change);
+        metrics.event(db, collection, ReplicationMetrics.RECEIVED);
+
+        ChangeEventDecoder.Decision decision = context.getDecoder().decode(change);
+        Mono<ChangeEventDecoder.Decision> resolved;
+        if (decision instanceof ChangeEventDecoder.Lookup lookup) {
+            resolved = Mono.from(sourceMongoClient.getDatabase(db).getCollection(collection, RawBsonDocument.class)
+                            .find(lookup.documentKey()).first())
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .map(document -> context.getDecoder().resolve(lookup, document.orElse(null)));
+        } else {
+            resolved = Mono.just(decision);
+        }
+
+        return resolved.flatMap(result -> {
+                    if (result instanceof ChangeEventDecoder.Write write) {
+                        queued.incrementAndGet();
+                        context.getAuditLog().record(name, change, write.namespace(), write.model());
+                        long seq = checkpointTracker.begin(change.getResumeToken());
+                        return Mono.just(new ReplicationEvent(seq, change, write.namespace(), write.model()));
+                    }
+                    if (result instanceof ChangeEventDecoder.Ddl ddl) {
+                        // Pending writes must land before the collection disappears; after writes were left
+                        // unapplied on shutdown the DDL waits for the restart as well
+                        return awaitApplied()
+                                .then(Mono.defer(() -> applier.isAbandoned() ? Mono.<ReplicationEvent>empty()
+                                        : Mono.fromRunnable(() -> {
+                                                    context.getDdlApplier().apply(ddl);
+                                                    context.getAuditLog().record(name, change, ddl.namespace(), null);
+                                                })
+                                                .subscribeOn(Schedulers.boundedElastic())
+                                                .then(Mono.<ReplicationEvent>fromRunnable(() -> complete(change, db,
+                                                        collection, ReplicationMetrics.APPLIED)))));
+                    }
+                    complete(change, db, collection, ReplicationMetrics.SKIPPED);
+                    return Mono.<ReplicationEvent>empty();
+                })
+                // Stops the stream: the event was never completed, so the checkpoint stays before it and it is
+                // read again on restart rather than skipped
+                .onErrorMap(e -> new IllegalStateException("Error processing change for " + db + "." + collection
+                        + ": " + e.getMessage(), e));
+    }
+
+    // Skipped and DDL events are complete as soon as the reader is done with them
+    private void complete(ChangeStreamDocument<RawBsonDocument> change, String db, String collection, String outcome) {
+        metrics.event(db, collection, outcome);
+        checkpointTracker.complete(checkpointTracker.begin(change.getResumeToken()));
+    }
+
+    private Mono<Void> awaitApplied() {
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(IDLE_POLL_MS))
+                .filter(tick -> checkpointTracker.inFlightCount() == 0 || applier.isAbandoned())
+                .next()
+                .then();
+    }
+
+    // A rejected batch is always retried: completing it would move the checkpoint past writes that never landed
+    private long retryBackoffMs() {
+        long configured = mongoProperties.getRetryBackoffMs();
+        return configured > 0 ? configured : DEFAULT_RETRY_BACKOFF_MS;
+    }
+
+    private Mono<Long> stopSignal() {
+        return Flux.interval(Duration.ofMillis(STOP_POLL_MS))
+                .filter(tick -> !context.getRunning().get())
+                .next();
+    }
+
+    private Mono<Void> checkpoint() {
+        return Mono.fromRunnable(() -> checkpointManager.update(checkpointTracker.advance()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private int partition(ReplicationEvent event) {
+        return Math.floorMod(Objects.hash(event.namespace().getFullName(), event.documentKey()),
+                Math.max(1, mongoProperties.getApply().getWorkers()));
+    }
+
+    private void batchCompleted(List<ReplicationEvent> batch) {
+        for (ReplicationEvent event : batch) {
+            for (long coalesced : event.coalescedSequences()) {
+                checkpointTracker.complete(coalesced);
+            }
+            checkpointTracker.complete(event.sequence());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.configuration.ReactiveMongoClients;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// What every change stream of one replication run shares. targets starts with the default target;
+// any further ones are fan-out targets fed from the same change streams. job is null for the default job.
+@Getter
+@Builder
+public class ReplicationContext {
+    private final MongoClient sourceMongoClient;
+    private final List<ReplicationTarget> targets;
+    private final MongoProperties mongoProperties;
+    private final ReplicationMetrics metrics;
+    private final ChangeStreamPipelineBuilder pipelineBuilder;
+    private final ChangeEventDecoder decoder;
+    private final AuditLog auditLog;
+    private final ReactiveMongoClients reactiveMongoClients;
+    private final ExecutorService streamExecutorService;
+    private final ExecutorService applyExecutorService;
+    private final AtomicBoolean running;
+    private final String job;
+    private final String tokenKey;
+
+    public String getTokenKey() {
+        return tokenKey != null ? tokenKey : ChangeStreamRunner.TOKEN_KEY;
+    }
+
+    // Journal and recording names; a named job's streams get its id in front so jobs never share files
+    public String localName(String stream) {
+        return job != null ? job + "-" + stream : stream;
+    }
+
+    public ReplicationTarget getDefaultTarget() {
+        return targets.get(0);
+    }
+
+    public MongoClient getTargetMongoClient() {
+        return getDefaultTarget().getClient();
+    }
+
+    public TargetNamespaceCache getNamespaceCache() {
+        return getDefaultTarget().getNamespaceCache();
+    }
+
+    public DdlApplier getDdlApplier() {
+        return getDefaultTarget().getDdlApplier();
+    }
+
+    public FlowController getFlowController() {
+        return getDefaultTarget().getFlowController();
+    }
+}
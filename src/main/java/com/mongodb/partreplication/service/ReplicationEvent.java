@@ -0,0 +1,38 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A change event on its way to the target: the sequence number is assigned by the reader and
+// drives checkpointing, the model is the write to apply. Coalesced events carry the sequences of
+// the earlier events they replaced; those complete together with this one.
+public record ReplicationEvent(long sequence,
+                               ChangeStreamDocument<RawBsonDocument> change,
+                               MongoNamespace namespace,
+                               WriteModel<RawBsonDocument> model,
+                               List<Long> coalescedSequences) {
+
+    public ReplicationEvent(long sequence, ChangeStreamDocument<RawBsonDocument> change, MongoNamespace namespace,
+                            WriteModel<RawBsonDocument> model) {
+        this(sequence, change, namespace, model, List.of());
+    }
+
+    public BsonDocument documentKey() {
+        return change.getDocumentKey();
+    }
+
+    // This event replaced by a later one for the same document, written as the given model
+    public ReplicationEvent supersededBy(ReplicationEvent later, WriteModel<RawBsonDocument> model) {
+        List<Long> sequences = new ArrayList<>(coalescedSequences.size() + later.coalescedSequences.size() + 1);
+        sequences.addAll(coalescedSequences);
+        sequences.add(sequence);
+        sequences.addAll(later.coalescedSequences);
+        return new ReplicationEvent(later.sequence, later.change, later.namespace, model, List.copyOf(sequences));
+    }
+}
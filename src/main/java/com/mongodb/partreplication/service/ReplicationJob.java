@@ -0,0 +1,360 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.configuration.ReactiveMongoClients;
+import com.mongodb.partreplication.configuration.ReplicationExecutor;
+import com.mongodb.partreplication.configuration.TargetMongoClients;
+import com.mongodb.partreplication.dto.CheckpointDTO;
+import com.mongodb.partreplication.dto.ReplicationStatusDTO;
+import com.mongodb.partreplication.dto.StreamSettings;
+import com.mongodb.partreplication.dto.TargetSettings;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonTimestamp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One replication job: its source and target clusters, databases, resume token key, metrics and
+// lifecycle. Jobs share the stream and apply pools of ReplicationExecutor. The default job is the one
+// configured at the top level of spring.data.mongodb; only it has reactive clients and fan-out targets.
+@Slf4j
+public class ReplicationJob {
+
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    @Getter
+    private final String id;
+    private final MongoProperties mongoProperties;
+    private final MongoClient sourceMongoClient;
+    private final MongoClient targetMongoClient;
+    private final String tokenKey;                          // null keeps lastResumeToken
+    private final AtomicBoolean running;
+    private final ReplicationExecutor replicationExecutor;
+    private final ReplicationMetrics replicationMetrics;
+    private final ReactiveMongoClients reactiveMongoClients;  // null: the job always uses the sync engine
+    private final TargetMongoClients targetMongoClients;
+    private final AuditLog auditLog;
+
+    @Getter
+    private volatile PartReplicationService.ReplicationStatus status = PartReplicationService.ReplicationStatus.STOPPED;
+    private final List<Future<?>> replicationTasks = new ArrayList<>();
+    private volatile List<StreamRunner> runners = List.of();
+    private volatile FlowController flowController;
+
+    @Builder
+    private ReplicationJob(String id, MongoProperties mongoProperties, MongoClient sourceMongoClient,
+                           MongoClient targetMongoClient, String tokenKey, AtomicBoolean running,
+                           ReplicationExecutor replicationExecutor, ReplicationMetrics replicationMetrics,
+                           ReactiveMongoClients reactiveMongoClients, TargetMongoClients targetMongoClients,
+                           AuditLog auditLog) {
+        this.id = id;
+        this.mongoProperties = mongoProperties;
+        this.sourceMongoClient = sourceMongoClient;
+        this.targetMongoClient = targetMongoClient;
+        this.tokenKey = tokenKey;
+        this.running = running != null ? running : new AtomicBoolean(false);
+        this.replicationExecutor = replicationExecutor;
+        this.replicationMetrics = replicationMetrics;
+        this.reactiveMongoClients = reactiveMongoClients;
+        this.targetMongoClients = targetMongoClients;
+        this.auditLog = auditLog;
+    }
+
+    public boolean isDefault() {
+        return ReplicationMetrics.DEFAULT_JOB.equals(id);
+    }
+
+    public ReplicationStatusDTO getStatusDetails() {
+        long lastCheckpointAt = replicationMetrics.getLastCheckpointAt();
+        return ReplicationStatusDTO.builder()
+                .job(id)
+                .status(status.name())
+                .timestamp(Instant.now().toString())
+                .eventsReceived(replicationMetrics.getTotal(ReplicationMetrics.RECEIVED))
+                .eventsApplied(replicationMetrics.getTotal(ReplicationMetrics.APPLIED))
+                .eventsSkipped(replicationMetrics.getTotal(ReplicationMetrics.SKIPPED))
+                .eventsFailed(replicationMetrics.getTotal(ReplicationMetrics.FAILED))
+                .eventsCoalesced(replicationMetrics.getTotal(ReplicationMetrics.COALESCED))
+                .readBufferDepth(replicationMetrics.getReadBufferDepth())
+                .journalBacklogBytes(replicationMetrics.getJournalBacklog())
+                .queueDepth(replicationMetrics.getQueueDepth())
+                .inFlight(replicationMetrics.getInFlight())
+                .lastCheckpointAt(lastCheckpointAt > 0 ? Instant.ofEpochMilli(lastCheckpointAt).toString() : null)
+                .lastCheckpointSequence(replicationMetrics.getLastCheckpointSequence())
+                .lagMsByNamespace(replicationMetrics.getLagByNamespace())
+                .resyncNeeded(replicationMetrics.getResyncNeeded())
+                .flowControl(flowController != null ? flowController.toStatus() : null)
+                .streams(runners.stream().map(StreamRunner::toStatus).toList())
+                .build();
+    }
+
+    // Initial sync hands off here: the next start replays every change since the copy began.
+    // Written under every token key so the handoff holds whichever stream layout starts next.
+    public synchronized void setStartAtOperationTime(BsonTimestamp operationTime) {
+        if (running.get()) {
+            throw new IllegalStateException("Stop replication before setting a start operation time");
+        }
+        newRunner(null).newCheckpointManager().storeStartAtOperationTime(operationTime);
+        for (String database : streamDatabases()) {
+            newRunner(database).newCheckpointManager().storeStartAtOperationTime(operationTime);
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public List<CheckpointDTO> getCheckpointHistory(String stream, int limit) {
+        return newRunner(streamDatabase(stream)).history(limit);
+    }
+
+    public synchronized void restoreCheckpoint(String stream, String checkpointId) {
+        if (running.get()) {
+            throw new IllegalStateException("Stop replication before restoring a checkpoint");
+        }
+        newRunner(streamDatabase(stream)).newCheckpointManager().restore(checkpointId);
+    }
+
+    public synchronized void start() {
+        if (running.get()) {
+            log.warn("Replication job {} is already running", id);
+            return;
+        }
+
+        running.set(true);
+        status = PartReplicationService.ReplicationStatus.STARTING;
+
+        boolean perDatabase = mongoProperties.getStreams().isPerDatabase();
+        ReplicationContext context = newContext(perDatabase ? streamDatabases().size() : 1, true);
+        warm(context);
+        if (engine() == StreamSettings.Engine.REACTIVE) {
+            warnSyncOnly(context);
+        }
+        List<StreamRunner> started = new ArrayList<>();
+        if (perDatabase) {
+            for (String database : streamDatabases()) {
+                started.add(newStreamRunner(database, context));
+            }
+        } else {
+            started.add(newStreamRunner(null, context));
+        }
+        if (started.isEmpty()) {
+            log.warn("No databases to replicate in job {}; not starting", id);
+            running.set(false);
+            status = PartReplicationService.ReplicationStatus.STOPPED;
+            return;
+        }
+        launch(context, started);
+    }
+
+    // Replays a stream's recorded events into the target through the same pipeline, then stops.
+    // Checkpoints go to the stream's own token key, so live replication can continue from the replay.
+    // Only target-uri is replayed to: fan-out needs the journal, which belongs to the live stream.
+    public synchronized void startReplay(String stream, String directory, long eventsPerSecond) throws IOException {
+        if (running.get()) {
+            throw new IllegalStateException("Stop replication before starting a replay");
+        }
+        String database = streamDatabase(stream);
+        ChangeEventReplayReader replayReader = new ChangeEventReplayReader(Path.of(directory),
+                database != null ? database : ChangeStreamRunner.CLUSTER);
+
+        running.set(true);
+        status = PartReplicationService.ReplicationStatus.STARTING;
+
+        ReplicationContext context = newContext(1, false);
+        warm(context);
+        launch(context, List.of(new ChangeStreamRunner(database, context, replayReader, eventsPerSecond)));
+    }
+
+    public synchronized void stop() {
+        if (!running.get()) {
+            log.warn("Replication job {} is not running", id);
+            return;
+        }
+
+        log.info("Stopping replication job {}", id);
+        running.set(false);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STOP_TIMEOUT_SECONDS);
+        for (Future<?> replicationTask : replicationTasks) {
+            try {
+                // Each reader exits within maxAwaitTime, then drains its workers and persists its final checkpoint
+                replicationTask.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Change stream did not stop within {}s; interrupting", STOP_TIMEOUT_SECONDS);
+                replicationTask.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                replicationTask.cancel(true);
+            } catch (ExecutionException e) {
+                log.error("Replication task failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void launch(ReplicationContext context, List<StreamRunner> started) {
+        runners = List.copyOf(started);
+        flowController = context.getFlowController();
+        replicationMetrics.bindFlowControl(flowController::getBatchSizeLimit, flowController::getConcurrencyLimit);
+        replicationMetrics.bindApplyEngine(
+                () -> runners.stream().mapToInt(StreamRunner::getQueueDepth).sum(),
+                () -> runners.stream().mapToInt(StreamRunner::getInFlight).sum());
+        replicationMetrics.bindReadBuffer(() -> runners.stream().mapToInt(StreamRunner::getReadBufferDepth).sum());
+        replicationMetrics.bindJournal(() -> runners.stream().mapToLong(StreamRunner::getJournalBacklogBytes).sum());
+        log.info("Starting job {} with {} {} change stream(s): {}", id, runners.size(), engine(),
+                runners.stream().map(StreamRunner::getName).toList());
+
+        // Each stream reads, applies and checkpoints on its own; the job stops once all have exited. Every
+        // thread a stream needs comes from the shared pools: a stream that finds none left clears the
+        // running flag, so the whole job stops instead of running without it.
+        AtomicInteger active = new AtomicInteger(runners.size());
+        status = PartReplicationService.ReplicationStatus.RUNNING;
+        replicationTasks.clear();
+        for (StreamRunner runner : runners) {
+            try {
+                replicationTasks.add(runner.start(() -> {
+                    if (active.decrementAndGet() == 0) {
+                        // A stream that failed, such as one that found no thread left, leaves the job in ERROR
+                        status = runners.stream().anyMatch(stopped -> stopped.getStatus()
+                                == PartReplicationService.ReplicationStatus.ERROR)
+                                ? PartReplicationService.ReplicationStatus.ERROR
+                                : PartReplicationService.ReplicationStatus.STOPPED;
+                        running.set(false);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // The shared pool is full: stop the streams that did start rather than run a partial job
+                log.error("No stream thread left for job {}; raise streams.max-threads: {}", id, e.getMessage(), e);
+                stop();
+                status = PartReplicationService.ReplicationStatus.ERROR;
+                throw new IllegalStateException("Replication thread pool exhausted starting job " + id, e);
+            }
+        }
+    }
+
+    // Settings only the sync engine implements; the reactive engine would otherwise ignore them silently
+    private void warnSyncOnly(ReplicationContext context) {
+        List<String> ignored = new ArrayList<>();
+        if (context.getTargets().size() > 1) {
+            ignored.add("fan-out targets");
+        }
+        if (mongoProperties.getApply().isTransactions()) {
+            ignored.add("apply.transactions");
+        }
+        if (mongoProperties.getApply().getCoalesceWindowMs() > 0) {
+            ignored.add("apply.coalesce-window-ms");
+        }
+        if (mongoProperties.getApply().getRetryBackoffMs() == 0) {
+            // The reactive engine never fails a rejected batch; it retries after 1s instead
+            ignored.add("apply.retry-backoff-ms: 0");
+        }
+        if (mongoProperties.getJournal().isEnabled()) {
+            ignored.add("journal");
+        }
+        if (mongoProperties.getFlowControl().isEnabled()) {
+            ignored.add("flow-control");
+        }
+        if (mongoProperties.getRecorder().isEnabled()) {
+            ignored.add("recorder");
+        }
+        if (!ignored.isEmpty()) {
+            log.warn("The reactive engine of job {} ignores {}; set streams.engine to sync to use them", id, ignored);
+        }
+    }
+
+    // Jobs without reactive clients fall back to the sync engine
+    private StreamSettings.Engine engine() {
+        return reactiveMongoClients != null ? mongoProperties.getStreams().getEngine() : StreamSettings.Engine.SYNC;
+    }
+
+    private StreamRunner newStreamRunner(String database, ReplicationContext context) {
+        return engine() == StreamSettings.Engine.REACTIVE
+                ? new ReactiveChangeStreamRunner(database, context)
+                : new ChangeStreamRunner(database, context);
+    }
+
+    // streams: how many change streams of this run share each target; fanOut adds the targets list
+    private ReplicationContext newContext(int streams, boolean fanOut) {
+        ChangeStreamPipelineBuilder pipelineBuilder = new ChangeStreamPipelineBuilder(
+                mongoProperties.getIncludeDatabases(), mongoProperties.getIgnoreDatabases(),
+                mongoProperties.getFilter());
+        ChangeEventDecoder decoder = new ChangeEventDecoder(mongoProperties, pipelineBuilder);
+        List<ReplicationTarget> targets = new ArrayList<>();
+        targets.add(new ReplicationTarget(ReplicationTarget.DEFAULT, targetMongoClient, Map.of(), decoder,
+                newFlowController(streams), replicationMetrics));
+        for (TargetSettings settings : fanOut ? mongoProperties.getTargets() : List.<TargetSettings>of()) {
+            if (settings.getName() == null || settings.getUri() == null
+                    || ReplicationTarget.DEFAULT.equals(settings.getName())) {
+                throw new IllegalArgumentException("Fan-out targets need a uri and a name other than "
+                        + ReplicationTarget.DEFAULT);
+            }
+            targets.add(new ReplicationTarget(settings.getName(), targetMongoClients.get(settings),
+                    settings.getDatabaseMapping(), decoder, newFlowController(streams), replicationMetrics));
+        }
+        return ReplicationContext.builder()
+                .sourceMongoClient(sourceMongoClient)
+                .targets(List.copyOf(targets))
+                .mongoProperties(mongoProperties)
+                .metrics(replicationMetrics)
+                .pipelineBuilder(pipelineBuilder)
+                .decoder(decoder)
+                .auditLog(auditLog)
+                .reactiveMongoClients(reactiveMongoClients)
+                .streamExecutorService(replicationExecutor.getExecutorService())
+                .applyExecutorService(replicationExecutor.getApplyExecutorService())
+                .running(running)
+                .job(isDefault() ? null : id)
+                .tokenKey(tokenKey)
+                .build();
+    }
+
+    private FlowController newFlowController(int streams) {
+        return new FlowController(mongoProperties.getFlowControl(), mongoProperties.getApply(), streams);
+    }
+
+    private void warm(ReplicationContext context) {
+        for (ReplicationTarget target : context.getTargets()) {
+            target.getNamespaceCache().warm(mongoProperties.getIncludeDatabases().stream()
+                    .map(target::mapDatabase)
+                    .toList());
+        }
+    }
+
+    private ChangeStreamRunner newRunner(String database) {
+        return new ChangeStreamRunner(database, newContext(1, false));
+    }
+
+    private List<String> streamDatabases() {
+        List<String> databases = new ArrayList<>();
+        for (String database : mongoProperties.getIncludeDatabases()) {
+            if (!mongoProperties.getIgnoreDatabases().contains(database)) {
+                databases.add(database);
+            }
+        }
+        return databases;
+    }
+
+    // Maps a stream name from the API to its database; the cluster-wide stream has none
+    private String streamDatabase(String stream) {
+        if (stream == null || stream.isEmpty() || ChangeStreamRunner.CLUSTER.equals(stream)) {
+            return null;
+        }
+        if (!streamDatabases().contains(stream)) {
+            throw new IllegalArgumentException("Unknown stream " + stream);
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.configuration.ReplicationExecutor;
+import com.mongodb.partreplication.dto.JobSettings;
+import com.mongodb.partreplication.dto.ReplicationStatusDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The replication jobs of this service by id: the default job plus every job under spring.data.mongodb.jobs.
+// Each named job has its own clients, metrics and token key; all jobs share the ReplicationExecutor pools.
+@Service
+@Slf4j
+public class ReplicationJobService {
+
+    private final Map<String, ReplicationJob> jobs = new LinkedHashMap<>();
+    private final List<MongoClient> clients = new ArrayList<>();
+
+    public ReplicationJobService(PartReplicationService partReplicationService, MongoProperties mongoProperties,
+                                 ReplicationExecutor replicationExecutor, MeterRegistry meterRegistry,
+                                 AuditLog auditLog) {
+        jobs.put(ReplicationMetrics.DEFAULT_JOB, partReplicationService.getJob());
+        for (JobSettings settings : mongoProperties.getJobs()) {
+            if (settings.getId() == null || settings.getSourceUri() == null || settings.getTargetUri() == null) {
+                throw new IllegalArgumentException("Replication jobs need an id, a source-uri and a target-uri");
+            }
+            if (jobs.containsKey(settings.getId())) {
+                throw new IllegalArgumentException("Duplicate replication job " + settings.getId());
+            }
+            log.info("Creating clients for replication job {}", settings.getId());
+            MongoClient source = MongoClients.create(settings.getSourceUri());
+            MongoClient target = MongoClients.create(settings.getTargetUri());
+            clients.add(source);
+            clients.add(target);
+            jobs.put(settings.getId(), ReplicationJob.builder()
+                    .id(settings.getId())
+                    .mongoProperties(mongoProperties.forJob(settings))
+                    .sourceMongoClient(source)
+                    .targetMongoClient(target)
+                    // '#': fan-out targets of the default job already take lastResumeToken@<target>
+                    .tokenKey(settings.getTokenKey() != null
+                            ? settings.getTokenKey() : ChangeStreamRunner.TOKEN_KEY + "#" + settings.getId())
+                    .replicationExecutor(replicationExecutor)
+                    .replicationMetrics(new ReplicationMetrics(meterRegistry, settings.getId()))
+                    .auditLog(auditLog)
+                    .build());
+        }
+    }
+
+    public ReplicationJob getJob(String id) {
+        ReplicationJob job = jobs.get(id);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown replication job " + id);
+        }
+        return job;
+    }
+
+    public List<ReplicationStatusDTO> getStatusDetails() {
+        return jobs.values().stream().map(ReplicationJob::getStatusDetails).toList();
+    }
+
+    public void startJob(String id) {
+        getJob(id).start();
+    }
+
+    public void stopJob(String id) {
+        getJob(id).stop();
+    }
+
+    // Streams drain and checkpoint before the clients they write through are closed
+    @PreDestroy
+    public void close() {
+        for (ReplicationJob job : jobs.values()) {
+            if (!job.isDefault() && job.isRunning()) {
+                job.stop();
+            }
+        }
+        clients.forEach(MongoClient::close);
+    }
+}
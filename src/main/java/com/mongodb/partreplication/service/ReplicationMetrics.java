@@ -0,0 +1,275 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// Micrometer instrumentation for the replication pipeline. Meters are cached per namespace so the
+// hot path only does a map lookup; totals are also kept locally for the status endpoint.
+// Each replication job has its own instance, told apart by the job tag; the bean belongs to the default job.
+@Component
+public class ReplicationMetrics {
+
+    public static final String RECEIVED = "received";
+    public static final String APPLIED = "applied";
+    public static final String SKIPPED = "skipped";
+    public static final String FAILED = "failed";
+    public static final String COALESCED = "coalesced";
+    public static final String STAGE_READ = "read";
+    public static final String STAGE_APPLY = "apply";
+
+    public static final String DEFAULT_JOB = "default";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final String job;
+    private final Map<EventKey, Counter> eventCounters = new ConcurrentHashMap<>();
+    private final Map<TargetNamespace, Timer> applyTimers = new ConcurrentHashMap<>();
+    private final Map<TargetNamespace, Timer> latencyTimers = new ConcurrentHashMap<>();
+    private final Map<TargetNamespace, AtomicLong> lagByNamespace = new ConcurrentHashMap<>();
+    private final Map<TargetNamespace, Counter> resyncCounters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> totals = new ConcurrentHashMap<>();
+    private final Map<String, Timer> stallTimers = new ConcurrentHashMap<>();
+    private final Timer checkpointTimer;
+    private final Counter auditDropped;
+
+    private volatile IntSupplier queueDepth = () -> 0;
+    private volatile IntSupplier inFlight = () -> 0;
+    private volatile IntSupplier readBufferDepth = () -> 0;
+    private volatile LongSupplier journalBacklog = () -> 0;
+    private volatile IntSupplier batchSizeLimit = () -> 0;
+    private volatile IntSupplier concurrencyLimit = () -> 0;
+    private volatile long lastCheckpointAt;
+    private volatile long lastCheckpointSequence;
+
+    @Autowired
+    public ReplicationMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, DEFAULT_JOB);
+    }
+
+    public ReplicationMetrics(MeterRegistry meterRegistry, String job) {
+        this.meterRegistry = meterRegistry;
+        this.job = job;
+        this.checkpointTimer = Timer.builder("replication.checkpoint.latency")
+                .description("Time to persist a resume token checkpoint")
+                .tag("job", job)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.auditDropped = Counter.builder("replication.audit.dropped")
+                .description("Audit records dropped because the audit writer fell behind")
+                .tag("job", job)
+                .register(meterRegistry);
+        Gauge.builder("replication.queue.depth", this, metrics -> metrics.queueDepth.getAsInt())
+                .description("Events queued for the apply workers")
+                .tag("job", job)
+                .register(meterRegistry);
+        Gauge.builder("replication.read.buffer.depth", this, metrics -> metrics.readBufferDepth.getAsInt())
+                .description("Events fetched from the change stream and waiting to be decoded")
+                .tag("job", job)
+                .register(meterRegistry);
+        Gauge.builder("replication.journal.backlog", this, metrics -> metrics.journalBacklog.getAsLong())
+                .description("Bytes spilled to the local journal and not yet read for apply")
+                .tag("job", job)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("replication.flow.batch.limit", this, metrics -> metrics.batchSizeLimit.getAsInt())
+                .description("Current bulkWrite batch size limit set by flow control")
+                .tag("job", job)
+                .register(meterRegistry);
+        Gauge.builder("replication.flow.concurrency.limit", this, metrics -> metrics.concurrencyLimit.getAsInt())
+                .description("Current limit on concurrent bulkWrites set by flow control")
+                .tag("job", job)
+                .register(meterRegistry);
+        Gauge.builder("replication.in.flight", this, metrics -> metrics.inFlight.getAsInt())
+                .description("Events read but not yet applied")
+                .tag("job", job)
+                .register(meterRegistry);
+        for (String outcome : new String[]{RECEIVED, APPLIED, SKIPPED, FAILED, COALESCED}) {
+            totals.put(outcome, new AtomicLong());
+        }
+    }
+
+    public void bindApplyEngine(IntSupplier queueDepth, IntSupplier inFlight) {
+        this.queueDepth = queueDepth;
+        this.inFlight = inFlight;
+    }
+
+    public void bindReadBuffer(IntSupplier readBufferDepth) {
+        this.readBufferDepth = readBufferDepth;
+    }
+
+    public void bindJournal(LongSupplier journalBacklog) {
+        this.journalBacklog = journalBacklog;
+    }
+
+    public void bindFlowControl(IntSupplier batchSizeLimit, IntSupplier concurrencyLimit) {
+        this.batchSizeLimit = batchSizeLimit;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public void auditDropped() {
+        auditDropped.increment();
+    }
+
+    // Time a stage spent blocked because the next stage's queue was full
+    public void stageStall(String stage, long nanos) {
+        stallTimers.computeIfAbsent(stage, s -> Timer.builder("replication.stage.stall")
+                .description("Time a pipeline stage waited on a full downstream queue")
+                .tag("job", job)
+                .tags("stage", s)
+                .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void event(String database, String collection, String outcome) {
+        event(database, collection, outcome, 1);
+    }
+
+    public void event(String database, String collection, String outcome, long count) {
+        EventKey key = new EventKey(database != null ? database : NONE, collection != null ? collection : NONE, outcome);
+        eventCounters.computeIfAbsent(key, k -> Counter.builder("replication.events")
+                .description("Change events by namespace and outcome")
+                .tag("job", job)
+                .tags("database", k.database(), "collection", k.collection(), "outcome", k.outcome())
+                .register(meterRegistry)).increment(count);
+        totals.get(outcome).addAndGet(count);
+    }
+
+    // Duration of one bulkWrite round-trip
+    public void applyLatency(String target, MongoNamespace namespace, long nanos) {
+        TargetNamespace targetNamespace = new TargetNamespace(target, namespace);
+        applyTimers.computeIfAbsent(targetNamespace, key -> Timer.builder("replication.apply.latency")
+                .description("Target bulkWrite latency")
+                .tag("job", job)
+                .tags(key.tags())
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Lag from the source event time to the moment it was applied on the target
+    public void applied(String target, MongoNamespace namespace, ChangeStreamDocument<RawBsonDocument> change,
+                        long appliedAtMillis) {
+        long eventMillis = eventTimeMillis(change);
+        if (eventMillis <= 0) {
+            return;
+        }
+        long lag = Math.max(0, appliedAtMillis - eventMillis);
+        TargetNamespace targetNamespace = new TargetNamespace(target, namespace);
+        latencyTimers.computeIfAbsent(targetNamespace, key -> Timer.builder("replication.event.latency")
+                .description("Source event time to target apply time")
+                .tag("job", job)
+                .tags(key.tags())
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(lag, TimeUnit.MILLISECONDS);
+        lagByNamespace.computeIfAbsent(targetNamespace, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("replication.lag", value, AtomicLong::get)
+                    .description("Replication lag of the last applied event")
+                    .tag("job", job)
+                    .tags(key.tags())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return value;
+        }).set(lag);
+    }
+
+    // A collection renamed in from outside the replicated namespaces: its documents only reach the target
+    // through a resync
+    public void resyncNeeded(String target, MongoNamespace namespace) {
+        resyncCounters.computeIfAbsent(new TargetNamespace(target, namespace),
+                key -> Counter.builder("replication.resync.needed")
+                        .description("Collections renamed into the replicated namespaces that need a resync")
+                        .tag("job", job)
+                        .tags(key.tags())
+                        .register(meterRegistry)).increment();
+    }
+
+    public void checkpoint(long sequence, long nanos) {
+        checkpointTimer.record(nanos, TimeUnit.NANOSECONDS);
+        lastCheckpointAt = System.currentTimeMillis();
+        lastCheckpointSequence = sequence;
+    }
+
+    public long getTotal(String outcome) {
+        return totals.get(outcome).get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    public int getReadBufferDepth() {
+        return readBufferDepth.getAsInt();
+    }
+
+    public long getJournalBacklog() {
+        return journalBacklog.getAsLong();
+    }
+
+    public int getInFlight() {
+        return inFlight.getAsInt();
+    }
+
+    public long getLastCheckpointAt() {
+        return lastCheckpointAt;
+    }
+
+    public long getLastCheckpointSequence() {
+        return lastCheckpointSequence;
+    }
+
+    public Map<String, Long> getLagByNamespace() {
+        Map<String, Long> lag = new TreeMap<>();
+        // Fan-out targets are listed as target/database.collection
+        lagByNamespace.forEach((key, value) -> lag.put(ReplicationTarget.DEFAULT.equals(key.target())
+                ? key.namespace().getFullName()
+                : key.target() + "/" + key.namespace().getFullName(), value.get()));
+        return lag;
+    }
+
+    public List<String> getResyncNeeded() {
+        // Listed like the lag: fan-out targets as target/database.collection
+        return resyncCounters.keySet().stream()
+                .map(key -> ReplicationTarget.DEFAULT.equals(key.target())
+                        ? key.namespace().getFullName()
+                        : key.target() + "/" + key.namespace().getFullName())
+                .sorted()
+                .toList();
+    }
+
+    private static long eventTimeMillis(ChangeStreamDocument<RawBsonDocument> change) {
+        // wallTime has millisecond precision (6.0+); clusterTime only has seconds
+        if (change.getWallTime() != null) {
+            return change.getWallTime().getValue();
+        }
+        if (change.getClusterTime() != null) {
+            return change.getClusterTime().getTime() * 1000L;
+        }
+        return 0;
+    }
+
+    private record EventKey(String database, String collection, String outcome) {
+    }
+
+    private record TargetNamespace(String target, MongoNamespace namespace) {
+        String[] tags() {
+            return new String[]{"target", target, "database", namespace.getDatabaseName(),
+                    "collection", namespace.getCollectionName()};
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClient;
+import lombok.Getter;
+
+import java.util.Map;
+
+// One cluster the change streams are applied to, with its own namespace cache, DDL applier and flow
+// control. The default target is target-uri; fan-out targets map source databases to their own names.
+@Getter
+public class ReplicationTarget {
+
+    public static final String DEFAULT = "default";
+
+    private final String name;
+    private final MongoClient client;
+    private final Map<String, String> databaseMapping;
+    private final TargetNamespaceCache namespaceCache;
+    private final DdlApplier ddlApplier;
+    private final FlowController flowController;
+
+    public ReplicationTarget(String name, MongoClient client, Map<String, String> databaseMapping,
+                             ChangeEventDecoder decoder, FlowController flowController, ReplicationMetrics metrics) {
+        this.name = name;
+        this.client = client;
+        this.databaseMapping = Map.copyOf(databaseMapping);
+        this.namespaceCache = new TargetNamespaceCache(client);
+        this.ddlApplier = new DdlApplier(name, client, namespaceCache, decoder, this::mapDatabase, metrics);
+        this.flowController = flowController;
+    }
+
+    public boolean isDefault() {
+        return DEFAULT.equals(name);
+    }
+
+    public String mapDatabase(String database) {
+        return database != null ? databaseMapping.getOrDefault(database, database) : null;
+    }
+
+    public MongoNamespace map(MongoNamespace namespace) {
+        if (namespace == null || !databaseMapping.containsKey(namespace.getDatabaseName())) {
+            return namespace;
+        }
+        return new MongoNamespace(mapDatabase(namespace.getDatabaseName()), namespace.getCollectionName());
+    }
+}
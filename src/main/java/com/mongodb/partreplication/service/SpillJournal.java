@@ -0,0 +1,324 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Local append-only journal of change events between the change stream reader and the apply stage,
+// kept in memory-mapped segment files. The reader appends without ever waiting on the target; each
+// target lane reads in order through its own Reader, and a position is committed once every lane has
+// applied everything before it. After a restart the uncommitted records are read again, and the
+// change stream resumes after the last journaled event: the resume point tracks the journal, not the target.
+//
+// Record layout: int length, int CRC32 of the body, body (the raw BSON event). A zero length ends a
+// segment. One writer thread; each Reader is used by one thread.
+@Slf4j
+public class SpillJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String STATE_FILE = "journal.state";
+    private static final int HEADER_BYTES = 8;
+    private static final int STATE_BYTES = 16;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final MappedByteBuffer state;  // committed position: long segment, long offset
+
+    // Writer side
+    private volatile MappedByteBuffer writeSegment;
+    private long writeIndex;
+    private volatile Position written;
+    private BsonDocument lastToken;
+    private boolean closed;
+
+    // Reader side
+    private final List<Reader> readers = new CopyOnWriteArrayList<>();
+    private Position readFrom;   // where readers start: the committed position found on open
+    private Position committed;
+
+    private SpillJournal(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(STATE_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.state = channel.map(FileChannel.MapMode.READ_WRITE, 0, STATE_BYTES);
+        }
+    }
+
+    public static SpillJournal open(Path directory, long segmentBytes) throws IOException {
+        SpillJournal journal = new SpillJournal(directory, Math.max(1 << 16, segmentBytes));
+        journal.recover();
+        return journal;
+    }
+
+    // Resume token of the newest journaled event, or null when the journal has never been written
+    public BsonDocument getLastToken() {
+        return lastToken;
+    }
+
+    // Synchronized with close, so a reader that outlives its stream can never write after it
+    public synchronized void append(ChangeStreamDocument<RawBsonDocument> change) throws IOException {
+        if (closed) {
+            throw new IOException("Journal " + directory + " is closed");
+        }
+        ByteBuf buffer = new RawBsonDocument(change, ChangeEventRecorder.CODEC).getByteBuffer();
+        byte[] body = new byte[buffer.remaining()];
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        if (writeSegment == null || writeSegment.remaining() < HEADER_BYTES + body.length) {
+            roll(body.length);
+        }
+        int offset = writeSegment.position();
+        // Body first, length last: a crash mid-append leaves a zero length or a bad checksum
+        writeSegment.position(offset + HEADER_BYTES);
+        writeSegment.put(body);
+        writeSegment.putInt(offset + 4, (int) crc.getValue());
+        writeSegment.putInt(offset, body.length);
+        lastToken = change.getResumeToken();
+        written = new Position(writeIndex, writeSegment.position());
+        notifyAll();
+    }
+
+    // A reader starting at the oldest uncommitted record; one per lane, created before the first commit
+    public Reader newReader() {
+        Reader reader = new Reader(readFrom);
+        readers.add(reader);
+        return reader;
+    }
+
+    // Every reader has applied everything up to position; drops the segments before it
+    public void commit(Position position) throws IOException {
+        if (committed != null && position.compareTo(committed) <= 0) {
+            return;
+        }
+        state.putLong(0, position.segment());
+        state.putLong(8, position.offset());
+        long oldest = committed != null ? committed.segment() : 0;
+        committed = position;
+        if (oldest < position.segment()) {
+            // On disk before any segment goes: after a crash the state must never point into a deleted one
+            state.force();
+        }
+        for (long index = oldest; index < position.segment(); index++) {
+            Files.deleteIfExists(segmentPath(index));
+        }
+    }
+
+    // Flushes appended records and the committed position to disk
+    public void sync() {
+        MappedByteBuffer segment = writeSegment;
+        if (segment != null) {
+            segment.force();
+        }
+        state.force();
+    }
+
+    // Approximate bytes journaled but not yet read by the slowest reader
+    public long getBacklogBytes() {
+        long backlog = 0;
+        for (Reader reader : readers) {
+            backlog = Math.max(backlog, reader.getBacklogBytes());
+        }
+        return backlog;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        sync();
+    }
+
+    // Continues after the committed position and finds the end of the newest segment. A record with
+    // a bad checksum is a torn write from a crash: it and anything after it are overwritten.
+    private void recover() throws IOException {
+        long committedSegment = state.getLong(0);
+        int committedOffset = (int) state.getLong(8);
+        long newest = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            newest = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .mapToLong(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .max()
+                    .orElse(-1);
+        }
+        committed = new Position(committedSegment, committedOffset);
+        if (newest < 0) {
+            // Nothing on disk (first run, or the directory was cleared): start a fresh segment
+            writeIndex = committedSegment;
+            committed = new Position(committedSegment, 0);
+            readFrom = committed;
+            return;
+        }
+
+        writeIndex = newest;
+        writeSegment = map(newest, FileChannel.MapMode.READ_WRITE, 0);
+        int offset = scan(writeSegment, newest);
+        if (offset + HEADER_BYTES <= writeSegment.capacity()) {
+            writeSegment.putInt(offset, 0);
+        }
+        writeSegment.position(offset);
+        written = new Position(newest, offset);
+        readFrom = committedSegment == newest && committedOffset > offset
+                ? new Position(newest, offset)
+                : committed;
+        if (lastToken == null && newest > committedSegment) {
+            // Crashed right after rolling: the newest event is at the end of the previous segment
+            scan(map(newest - 1, FileChannel.MapMode.READ_ONLY, 0), newest - 1);
+        }
+        log.info("Opened journal {} with {} bytes still to apply", directory,
+                (newest - readFrom.segment()) * segmentBytes + offset - readFrom.offset());
+    }
+
+    // Returns the end of the valid records in a segment and remembers the token of the last one
+    private int scan(MappedByteBuffer segment, long index) {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= segment.capacity()) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > segment.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            segment.get(offset + HEADER_BYTES, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                log.warn("Discarding torn journal record at {}:{}", segmentPath(index), offset);
+                break;
+            }
+            ChangeStreamDocument<RawBsonDocument> change = new RawBsonDocument(body).decode(ChangeEventRecorder.CODEC);
+            if (change.getOperationType() != OperationType.INVALIDATE) {
+                // Journals written before invalidates were kept out may still hold one; never resume after it
+                lastToken = change.getResumeToken();
+            }
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private void roll(int bodyLength) throws IOException {
+        if (writeSegment != null) {
+            if (writeSegment.remaining() >= HEADER_BYTES) {
+                writeSegment.putInt(writeSegment.position(), 0);
+            }
+            writeSegment.force();
+            writeIndex++;
+        }
+        writeSegment = map(writeIndex, FileChannel.MapMode.READ_WRITE, Math.max(segmentBytes, HEADER_BYTES + bodyLength));
+    }
+
+    private MappedByteBuffer map(long index, FileChannel.MapMode mode, long size) throws IOException {
+        try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                ? FileChannel.open(segmentPath(index), StandardOpenOption.READ)
+                : FileChannel.open(segmentPath(index), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, size > 0 ? size : channel.size());
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    // One lane's read position. Waits on the journal's monitor, which every append notifies.
+    public final class Reader {
+
+        private MappedByteBuffer readSegment;
+        private long readIndex;
+        private int readOffset;
+
+        private Reader(Position start) {
+            this.readIndex = start.segment();
+            this.readOffset = start.offset();
+        }
+
+        // Next event in journal order, waiting up to timeoutMs for one; null if none arrived
+        public Entry poll(long timeoutMs) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (true) {
+                Entry entry = tryRead();
+                if (entry != null) {
+                    return entry;
+                }
+                synchronized (SpillJournal.this) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMs <= 0) {
+                        return null;
+                    }
+                    if (!isReadable()) {
+                        SpillJournal.this.wait(remainingMs);
+                    }
+                }
+            }
+        }
+
+        // Approximate bytes journaled but not yet read through this reader
+        public long getBacklogBytes() {
+            Position end = written;
+            if (end == null) {
+                return 0;
+            }
+            return (end.segment() - readIndex) * segmentBytes + end.offset() - readOffset;
+        }
+
+        private boolean isReadable() {
+            Position end = written;
+            return end != null && (readIndex < end.segment() || readOffset < end.offset());
+        }
+
+        private Entry tryRead() throws IOException {
+            while (true) {
+                Position end = written;
+                if (end == null || (readIndex == end.segment() && readOffset >= end.offset())) {
+                    return null;
+                }
+                if (readSegment == null) {
+                    readSegment = map(readIndex, FileChannel.MapMode.READ_ONLY, 0);
+                }
+                int length = readOffset + HEADER_BYTES <= readSegment.capacity() ? readSegment.getInt(readOffset) : 0;
+                if (length == 0) {
+                    // End of a finished segment; the writer has moved on to the next one
+                    readIndex++;
+                    readOffset = 0;
+                    readSegment = null;
+                    continue;
+                }
+                byte[] body = new byte[length];
+                readSegment.get(readOffset + HEADER_BYTES, body);
+                readOffset += HEADER_BYTES + length;
+                return new Entry(new RawBsonDocument(body).decode(ChangeEventRecorder.CODEC),
+                        new Position(readIndex, readOffset));
+            }
+        }
+    }
+
+    public record Entry(ChangeStreamDocument<RawBsonDocument> change, Position position) {
+    }
+
+    public record Position(long segment, int offset) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position other) {
+            return segment != other.segment ? Long.compare(segment, other.segment) : Integer.compare(offset, other.offset);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.partreplication.dto.StreamStatusDTO;
+
+import java.util.concurrent.Future;
+
+// One replicated change stream, whichever engine drives it. Runs until the shared running flag is
+// cleared, then drains and persists its final checkpoint before calling onStopped.
+public interface StreamRunner {
+
+    String getName();
+
+    PartReplicationService.ReplicationStatus getStatus();
+
+    Future<?> start(Runnable onStopped);
+
+    int getReadBufferDepth();
+
+    long getJournalBacklogBytes();
+
+    int getQueueDepth();
+
+    int getInFlight();
+
+    StreamStatusDTO toStatus();
+}
@@ -0,0 +1,298 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.TargetStatusDTO;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The part of a change stream that belongs to one target: its apply workers, checkpoint tracker and
+// resume token. Every lane sees every event in stream order, each from its own decode loop, so a slow
+// target only fills its own worker queues and falls behind in the stream's journal.
+@Slf4j
+public class TargetLane {
+
+    private static final BulkWriteOptions ORDERED = new BulkWriteOptions().ordered(true);
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final long TRANSACTION_RETRY_BACKOFF_MS = 1000;
+    private static final long RETRY_CHECK_MS = 100;
+
+    @Getter
+    private final ReplicationTarget target;
+    @Getter
+    private final String tokenKey;
+    private final ReplicationContext context;
+    private final MongoProperties mongoProperties;
+    private final ReplicationMetrics metrics;
+
+    private final CheckpointTracker checkpointTracker = new CheckpointTracker();
+    @Getter
+    private final CheckpointManager checkpointManager;
+    private volatile PartitionedApplyEngine applyEngine;
+    private volatile long appliedSequence;
+    private final AtomicLong transactionWrites = new AtomicLong();
+    private final AtomicLong transactionRetries = new AtomicLong();
+
+    public TargetLane(ReplicationTarget target, String streamTokenKey, ReplicationContext context) {
+        this.target = target;
+        this.tokenKey = tokenKey(streamTokenKey, target);
+        this.context = context;
+        this.mongoProperties = context.getMongoProperties();
+        this.metrics = context.getMetrics();
+        this.checkpointManager = new CheckpointManager(target.getClient(), mongoProperties.getTokenCollection(),
+                mongoProperties.getCheckpoint(), tokenKey, metrics);
+    }
+
+    // The default target keeps the stream's key so existing tokens still resume; fan-out targets add
+    // their name in case two of them share a cluster
+    public static String tokenKey(String streamTokenKey, ReplicationTarget target) {
+        return target.isDefault() ? streamTokenKey : streamTokenKey + "@" + target.getName();
+    }
+
+    public void open() {
+        checkpointManager.initHistory();
+        applyEngine = new PartitionedApplyEngine(target.getName(), target.getClient(), mongoProperties.getApply(),
+                mongoProperties.getRetryBackoffMs(), context.getApplyExecutorService(),
+                target.getNamespaceCache()::ensureExists, checkpointTracker, metrics, target.getFlowController());
+        applyEngine.start();
+    }
+
+    public void dispatch(ChangeStreamDocument<RawBsonDocument> change, ChangeEventDecoder.Write write)
+            throws InterruptedException {
+        long seq = checkpointTracker.begin(change.getResumeToken());
+        dispatch(new ReplicationEvent(seq, change, target.map(write.namespace()), write.model()));
+    }
+
+    private void dispatch(ReplicationEvent event) throws InterruptedException {
+        if (!applyEngine.tryDispatch(event)) {
+            // The worker queue is full: this target's apply stage is the bottleneck
+            long stalledAt = System.nanoTime();
+            applyEngine.dispatch(event);
+            metrics.stageStall(ReplicationMetrics.STAGE_APPLY, System.nanoTime() - stalledAt);
+        }
+    }
+
+    // Pending writes must land before the collection disappears
+    public void applyDdl(ChangeStreamDocument<RawBsonDocument> change, ChangeEventDecoder.Ddl ddl)
+            throws InterruptedException {
+        applyEngine.awaitDrained();
+        target.getDdlApplier().apply(ddl);
+        complete(change);
+    }
+
+    // Applies a source transaction as target transactions of at most transactionMaxOperations writes and
+    // transactionMaxBytes. Earlier writes are drained first; the transaction's events are begun only
+    // now and completed once their commit is acknowledged, so the checkpoint never passes an
+    // uncommitted transaction. A failed commit is retried as a transaction, with backoff, for as long as
+    // replication runs; on shutdown the rest stays uncompleted and is read again after restart.
+    public void applyTransaction(TransactionGroup group, ApplySettings settings) throws InterruptedException {
+        applyEngine.awaitDrained();
+        List<ReplicationEvent> events = new ArrayList<>(group.size());
+        for (TransactionGroup.Member member : group.getMembers()) {
+            long seq = checkpointTracker.begin(member.change().getResumeToken());
+            if (member.write() == null) {
+                checkpointTracker.complete(seq);
+                continue;
+            }
+            events.add(new ReplicationEvent(seq, member.change(), target.map(member.write().namespace()),
+                    idempotent(member.change(), member.write().model())));
+        }
+
+        int offset = 0;
+        int attempt = 0;
+        while (offset < events.size()) {
+            List<ReplicationEvent> chunk = chunk(events, offset, settings);
+            try {
+                commit(chunk);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (!awaitRetry(chunk.size(), attempt++, settings, e)) {
+                    log.warn("Leaving a transaction of {} writes on target {} unapplied on shutdown; it is read "
+                            + "again after restart", events.size() - offset, target.getName());
+                    return;
+                }
+                continue;
+            }
+            for (ReplicationEvent event : chunk) {
+                checkpointTracker.complete(event.sequence());
+            }
+            offset += chunk.size();
+            attempt = 0;
+        }
+    }
+
+    // Sleeps with exponential backoff; false once replication is stopping. With the journal on, the
+    // source keeps being read meanwhile.
+    private boolean awaitRetry(int writes, int attempt, ApplySettings settings, Exception e)
+            throws InterruptedException {
+        long baseMs = mongoProperties.getRetryBackoffMs() > 0
+                ? mongoProperties.getRetryBackoffMs()
+                : TRANSACTION_RETRY_BACKOFF_MS;
+        long backoffMs = Math.min(Math.max(baseMs, settings.getMaxRetryBackoffMs()), baseMs << Math.min(attempt, 20));
+        transactionRetries.incrementAndGet();
+        log.warn("Transaction of {} writes on target {} failed (attempt {}), retrying in {} ms: {}", writes,
+                target.getName(), attempt + 1, backoffMs, e.getMessage());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        while (System.nanoTime() < deadline) {
+            if (!context.getRunning().get()) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(RETRY_CHECK_MS, backoffMs));
+        }
+        return context.getRunning().get();
+    }
+
+    // Inserts become upserts: a replayed insert would otherwise abort the whole transaction
+    private static WriteModel<RawBsonDocument> idempotent(ChangeStreamDocument<RawBsonDocument> change,
+                                                          WriteModel<RawBsonDocument> model) {
+        if (model instanceof InsertOneModel<RawBsonDocument> insert && change.getDocumentKey() != null) {
+            return new ReplaceOneModel<>(change.getDocumentKey(), insert.getDocument(), UPSERT);
+        }
+        return model;
+    }
+
+    private static List<ReplicationEvent> chunk(List<ReplicationEvent> events, int offset, ApplySettings settings) {
+        int maxOperations = Math.max(1, settings.getTransactionMaxOperations());
+        long bytes = 0;
+        int end = offset;
+        while (end < events.size() && end - offset < maxOperations) {
+            bytes += FlowController.bytesOf(List.of(events.get(end).model()));
+            if (end > offset && bytes > settings.getTransactionMaxBytes()) {
+                break;
+            }
+            end++;
+        }
+        return events.subList(offset, end);
+    }
+
+    // One bulkWrite per run of writes to the same namespace, all inside one transaction
+    private void commit(List<ReplicationEvent> chunk) throws InterruptedException {
+        Set<MongoNamespace> namespaces = new LinkedHashSet<>();
+        List<WriteModel<RawBsonDocument>> models = new ArrayList<>(chunk.size());
+        for (ReplicationEvent event : chunk) {
+            namespaces.add(event.namespace());
+            models.add(event.model());
+        }
+        // Collections are created outside the transaction
+        namespaces.forEach(target.getNamespaceCache()::ensureExists);
+
+        FlowController flowController = target.getFlowController();
+        flowController.acquire(models);
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        try (ClientSession session = target.getClient().startSession()) {
+            session.withTransaction(() -> {
+                int start = 0;
+                for (int i = 1; i <= chunk.size(); i++) {
+                    if (i < chunk.size() && chunk.get(i).namespace().equals(chunk.get(start).namespace())) {
+                        continue;
+                    }
+                    MongoNamespace namespace = chunk.get(start).namespace();
+                    target.getClient().getDatabase(namespace.getDatabaseName())
+                            .getCollection(namespace.getCollectionName(), RawBsonDocument.class)
+                            .bulkWrite(session, models.subList(start, i), ORDERED);
+                    start = i;
+                }
+                return null;
+            });
+            failed = false;
+        } finally {
+            flowController.release(System.nanoTime() - startedAt, failed);
+        }
+
+        long latencyNanos = System.nanoTime() - startedAt;
+        long now = System.currentTimeMillis();
+        for (MongoNamespace namespace : namespaces) {
+            metrics.applyLatency(target.getName(), namespace, latencyNanos);
+        }
+        for (ReplicationEvent event : chunk) {
+            metrics.applied(target.getName(), event.namespace(), event.change(), now);
+            metrics.event(event.namespace().getDatabaseName(), event.namespace().getCollectionName(),
+                    ReplicationMetrics.APPLIED);
+        }
+        transactionWrites.addAndGet(chunk.size());
+        log.debug("Committed transaction of {} writes in {} on target {}", chunk.size(), namespaces, target.getName());
+    }
+
+    // A skipped event is complete immediately; its token is stored once every earlier write has been applied
+    public void complete(ChangeStreamDocument<RawBsonDocument> change) {
+        checkpointTracker.complete(checkpointTracker.begin(change.getResumeToken()));
+    }
+
+    public void awaitDrained() throws InterruptedException {
+        applyEngine.awaitDrained();
+    }
+
+    // Moves this target's checkpoint to the newest token its workers have all moved past
+    public void checkpoint() {
+        CheckpointTracker.Watermark watermark = checkpointTracker.advance();
+        if (watermark != null) {
+            appliedSequence = watermark.sequence();
+        }
+        checkpointManager.update(watermark);
+    }
+
+    // Sequence of the newest event this target has applied everything up to
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public long lastSequence() {
+        return checkpointTracker.lastSequence();
+    }
+
+    public void close() {
+        applyEngine.stop();
+        checkpoint();
+        checkpointManager.flush();
+    }
+
+    public int getQueueDepth() {
+        PartitionedApplyEngine engine = applyEngine;
+        return engine != null ? engine.getQueueDepth() : 0;
+    }
+
+    public int getInFlight() {
+        return checkpointTracker.inFlightCount();
+    }
+
+    public long getAppliedCount() {
+        PartitionedApplyEngine engine = applyEngine;
+        return (engine != null ? engine.getAppliedCount() : 0) + transactionWrites.get();
+    }
+
+    public long getFailedCount() {
+        PartitionedApplyEngine engine = applyEngine;
+        return engine != null ? engine.getFailedCount() : 0;
+    }
+
+    public TargetStatusDTO toStatus() {
+        return TargetStatusDTO.builder()
+                .name(target.getName())
+                .tokenKey(tokenKey)
+                .queueDepth(getQueueDepth())
+                .inFlight(getInFlight())
+                .eventsApplied(getAppliedCount())
+                .eventsFailed(getFailedCount())
+                .appliedSequence(appliedSequence)
+                .transactionRetries(transactionRetries.get())
+                .build();
+    }
+}
@@ -0,0 +1,78 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers which collections exist on the target so the apply path does not list collections per batch.
+// Warmed when replication starts, filled lazily, and invalidated by drop/rename/dropDatabase events.
+@Slf4j
+public class TargetNamespaceCache {
+
+    private static final int NAMESPACE_EXISTS = 48;
+
+    private final MongoClient targetMongoClient;
+    private final Set<String> knownNamespaces = ConcurrentHashMap.newKeySet();
+
+    public TargetNamespaceCache(MongoClient targetMongoClient) {
+        this.targetMongoClient = targetMongoClient;
+    }
+
+    public void warm(Collection<String> databases) {
+        for (String database : databases) {
+            try {
+                for (String collection : targetMongoClient.getDatabase(database).listCollectionNames()) {
+                    knownNamespaces.add(database + "." + collection);
+                }
+            } catch (Exception e) {
+                log.error("Failed to list collections of {} on target: {}", database, e.getMessage(), e);
+            }
+        }
+        log.info("Namespace cache warmed with {} target collections", knownNamespaces.size());
+    }
+
+    // Creates the collection the first time a namespace is seen; costs nothing afterwards
+    public void ensureExists(MongoNamespace namespace) {
+        String fullName = namespace.getFullName();
+        if (knownNamespaces.contains(fullName)) {
+            return;
+        }
+        try {
+            log.info("Creating collection {} on target", fullName);
+            targetMongoClient.getDatabase(namespace.getDatabaseName()).createCollection(namespace.getCollectionName());
+            knownNamespaces.add(fullName);
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() == NAMESPACE_EXISTS) {
+                // Created concurrently by another worker, or missed by the warm-up
+                knownNamespaces.add(fullName);
+            } else {
+                log.error("Failed to ensure collection {} exists: {}", fullName, e.getMessage(), e);
+            }
+        } catch (Exception e) {
+            log.error("Failed to ensure collection {} exists: {}", fullName, e.getMessage(), e);
+            // Continue to attempt the write operation; MongoDB may auto-create DB
+        }
+    }
+
+    public boolean contains(MongoNamespace namespace) {
+        return knownNamespaces.contains(namespace.getFullName());
+    }
+
+    public void invalidate(MongoNamespace namespace) {
+        knownNamespaces.remove(namespace.getFullName());
+    }
+
+    public void invalidateDatabase(String database) {
+        String prefix = database + ".";
+        knownNamespaces.removeIf(namespace -> namespace.startsWith(prefix));
+    }
+
+    public int size() {
+        return knownNamespaces.size();
+    }
+}
@@ -0,0 +1,30 @@
+package com.mongodb.partreplication.service;
+
+import java.util.concurrent.TimeUnit;
+
+// Rate limiter shared by flow control and the verifier. Allows a burst of one second's worth; a take
+// larger than that runs into debt and waits it off.
+final class TokenBucket {
+    private final long perSecond;
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    TokenBucket(long perSecond) {
+        this.perSecond = perSecond;
+        this.available = perSecond;
+    }
+
+    void take(long permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            available = Math.min(perSecond, available + (now - refilledAt) * perSecond / 1e9);
+            refilledAt = now;
+            available -= permits;
+            waitNanos = available < 0 ? (long) (-available * 1e9 / perSecond) : 0;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// The events of one source transaction, held back by the decode loop until the transaction ends.
+// A committed transaction's events arrive one after another in the change stream and share its
+// commit's cluster time, so the group closes at the first event with another lsid/txnNumber or
+// cluster time, or once the cursor's post-batch resume token is past that cluster time. A group that
+// reaches the transaction limits is applied as it fills, so large transactions are never held whole.
+public class TransactionGroup {
+
+    private final BsonDocument lsid;
+    private final long txnNumber;
+    private final BsonTimestamp clusterTime;
+    private final List<Member> members = new ArrayList<>();
+    private long bytes;
+
+    public TransactionGroup(ChangeStreamDocument<RawBsonDocument> first) {
+        this.lsid = first.getLsid();
+        this.txnNumber = first.getTxnNumber().longValue();
+        this.clusterTime = first.getClusterTime();
+    }
+
+    public static boolean isTransactional(ChangeStreamDocument<RawBsonDocument> change) {
+        return change.getLsid() != null && change.getTxnNumber() != null;
+    }
+
+    public boolean includes(ChangeStreamDocument<RawBsonDocument> change) {
+        return isTransactional(change) && change.getTxnNumber().longValue() == txnNumber
+                && lsid.equals(change.getLsid()) && Objects.equals(clusterTime, change.getClusterTime());
+    }
+
+    // True once the stream has moved past the transaction's cluster time: none of its events can follow
+    public boolean endedBefore(BsonDocument resumeToken) {
+        BsonTimestamp passed = clusterTimeOf(resumeToken);
+        return clusterTime != null && passed != null && passed.compareTo(clusterTime) > 0;
+    }
+
+    // A resume token's _data is a hex KeyString that starts with the cluster time: type byte 0x82, then
+    // the timestamp as a big-endian long. Null for any other format.
+    static BsonTimestamp clusterTimeOf(BsonDocument resumeToken) {
+        if (resumeToken == null || !resumeToken.isString("_data")) {
+            return null;
+        }
+        String data = resumeToken.getString("_data").getValue();
+        if (data.length() < 18 || !data.startsWith("82")) {
+            return null;
+        }
+        try {
+            return new BsonTimestamp(Long.parseUnsignedLong(data.substring(2, 18), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // write is null for an event the filters skip; it still completes with the transaction
+    public void add(ChangeStreamDocument<RawBsonDocument> change, ChangeEventDecoder.Write write) {
+        members.add(new Member(change, write));
+        if (write != null) {
+            bytes += FlowController.bytesOf(List.of(write.model()));
+        }
+    }
+
+    // The group holds a full target transaction and is applied before more of it is buffered
+    public boolean isFull(int maxOperations, long maxBytes) {
+        return members.size() >= Math.max(1, maxOperations) || bytes >= maxBytes;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public record Member(ChangeStreamDocument<RawBsonDocument> change, ChangeEventDecoder.Write write) {
+    }
+}
@@ -0,0 +1,495 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.partreplication.configuration.MongoProperties;
+import com.mongodb.partreplication.configuration.ReplicationExecutor;
+import com.mongodb.partreplication.dto.VerificationStatusDTO;
+import com.mongodb.partreplication.dto.VerifySettings;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Checks that the target matches the source for the included collections while replication keeps
+// running. Each collection is split into _id ranges; both sides hash a range at the same time and
+// only ranges whose hashes differ are split further. The hash is computed by the servers (the sum of
+// $toHashedIndexKey over the range's documents), so a matching range never leaves its cluster; servers
+// without that operator fall back to SHA-256 here over the raw documents in _id order. At the bottom,
+// documents of mismatched ranges are compared one by one and, with repair on, the target copy is
+// replaced with the current source version. Repairs are conditional on the target document still
+// being the one that was compared, so they never overwrite a newer write from the change stream.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VerificationService {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoClient sourceMongoClient;
+    private final MongoClient targetMongoClient;
+    private final MongoProperties mongoProperties;
+    private final ReplicationExecutor replicationExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger collectionsTotal = new AtomicInteger();
+    private final AtomicInteger collectionsDone = new AtomicInteger();
+    private final AtomicInteger rangesTotal = new AtomicInteger();
+    private final AtomicInteger rangesChecked = new AtomicInteger();
+    private final AtomicInteger rangesMismatched = new AtomicInteger();
+    private final AtomicLong documentsCompared = new AtomicLong();
+    private final AtomicLong documentsMissing = new AtomicLong();
+    private final AtomicLong documentsExtra = new AtomicLong();
+    private final AtomicLong documentsDifferent = new AtomicLong();
+    private final AtomicLong documentsRepaired = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, AtomicLong> differencesByNamespace = new ConcurrentHashMap<>();
+    private volatile String state = "IDLE";
+    private volatile String message;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile boolean repair;
+    private volatile TokenBucket throttle;
+    private volatile boolean serverHash;
+
+    // repair overrides the configured setting when given
+    public synchronized void startVerification(Boolean repair) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Verification is already running");
+        }
+        VerifySettings settings = mongoProperties.getVerify();
+        reset(repair != null ? repair : settings.isRepair());
+        replicationExecutor.getVerificationExecutorService().submit(() -> {
+            try {
+                runVerification(settings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                state = "INTERRUPTED";
+            } catch (Exception e) {
+                log.error("Verification failed", e);
+                state = "ERROR";
+                message = e.getMessage();
+            } finally {
+                finishedAt = Instant.now();
+                running.set(false);
+            }
+        });
+    }
+
+    public VerificationStatusDTO getStatus() {
+        Map<String, Long> differences = new TreeMap<>();
+        differencesByNamespace.forEach((namespace, count) -> differences.put(namespace, count.get()));
+        return VerificationStatusDTO.builder()
+                .state(state)
+                .startedAt(startedAt != null ? startedAt.toString() : null)
+                .finishedAt(finishedAt != null ? finishedAt.toString() : null)
+                .repair(repair)
+                .collectionsTotal(collectionsTotal.get())
+                .collectionsDone(collectionsDone.get())
+                .rangesTotal(rangesTotal.get())
+                .rangesChecked(rangesChecked.get())
+                .rangesMismatched(rangesMismatched.get())
+                .documentsCompared(documentsCompared.get())
+                .documentsMissing(documentsMissing.get())
+                .documentsExtra(documentsExtra.get())
+                .documentsDifferent(documentsDifferent.get())
+                .documentsRepaired(documentsRepaired.get())
+                .errors(errors.get())
+                .differencesByNamespace(differences)
+                .message(message)
+                .build();
+    }
+
+    private void runVerification(VerifySettings settings) throws InterruptedException, ExecutionException {
+        throttle = settings.getMaxDocumentsPerSecond() > 0
+                ? new TokenBucket(settings.getMaxDocumentsPerSecond())
+                : null;
+        serverHash = settings.isServerHash();
+        ChangeStreamPipelineBuilder filter = new ChangeStreamPipelineBuilder(mongoProperties.getIncludeDatabases(),
+                mongoProperties.getIgnoreDatabases(), mongoProperties.getFilter());
+        List<String> collections = new ArrayList<>();
+        for (String database : mongoProperties.getIncludeDatabases()) {
+            if (mongoProperties.getIgnoreDatabases().contains(database)) {
+                continue;
+            }
+            for (BsonDocument info : sourceMongoClient.getDatabase(database)
+                    .listCollections(BsonDocument.class)
+                    .filter(Filters.eq("type", "collection"))) {
+                String name = info.getString("name").getValue();
+                if (!name.startsWith("system.") && filter.matchesCollection(database, name)) {
+                    collections.add(database + "." + name);
+                }
+            }
+        }
+        collectionsTotal.set(collections.size());
+        log.info("Verifying {} collections (repair {})", collections.size(), repair ? "on" : "off");
+
+        state = "VERIFYING";
+        int threads = Math.max(1, settings.getThreads());
+        ExecutorService rangePool = Executors.newFixedThreadPool(threads);
+        // The target side of each range is read on its own thread so both sides are hashed at once
+        ExecutorService targetPool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> checks = new ArrayList<>();
+            for (String namespace : collections) {
+                int dot = namespace.indexOf('.');
+                Side side = side(namespace, namespace.substring(0, dot), namespace.substring(dot + 1));
+                List<IdRange> ranges = IdRangeSplitter.split(side.sourceKeys(), settings.getRangesPerCollection());
+                rangesTotal.addAndGet(ranges.size());
+                AtomicInteger remaining = new AtomicInteger(ranges.size());
+                for (IdRange range : ranges) {
+                    checks.add(rangePool.submit(() -> {
+                        try {
+                            verifyRange(side, range, 0, settings, targetPool);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            log.error("Failed to verify range {} of {}: {}", range, namespace, e.getMessage(), e);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0) {
+                                collectionsDone.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> check : checks) {
+                check.get();
+            }
+        } finally {
+            rangePool.shutdownNow();
+            targetPool.shutdownNow();
+        }
+
+        long differences = documentsMissing.get() + documentsExtra.get() + documentsDifferent.get();
+        message = "Compared " + documentsCompared.get() + " documents; " + differences + " differed, "
+                + documentsRepaired.get() + " repaired";
+        if (errors.get() > 0) {
+            state = "COMPLETED_WITH_ERRORS";
+        } else {
+            state = differences > 0 ? "COMPLETED_WITH_DIFFERENCES" : "COMPLETED";
+        }
+        log.info("Verification {}: {}", state, message);
+    }
+
+    // Hashes the range on both sides; a mismatch is split and checked again until it is small
+    // enough, or too deep, to compare document by document
+    private void verifyRange(Side side, IdRange range, int depth, VerifySettings settings,
+                             ExecutorService targetPool) throws InterruptedException, ExecutionException {
+        // Read once: another range may switch hashing off meanwhile, and both sides must hash the same way
+        boolean onServer = serverHash;
+        RangeHash sourceHash;
+        RangeHash target;
+        try {
+            Future<RangeHash> targetHash = targetPool.submit(() -> hash(side.target(), range, settings, onServer));
+            sourceHash = hash(side.source(), range, settings, onServer);
+            target = targetHash.get();
+        } catch (MongoCommandException | ExecutionException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (!onServer || !(cause instanceof MongoCommandException)) {
+                throw e;
+            }
+            // Both sides must hash the same way, so the whole range is hashed again here
+            log.warn("Server-side range hashing failed on {}; hashing documents here instead: {}",
+                    side.namespace(), cause.getMessage());
+            serverHash = false;
+            verifyRange(side, range, depth, settings, targetPool);
+            return;
+        }
+        rangesChecked.incrementAndGet();
+        documentsCompared.addAndGet(sourceHash.documents());
+        if (sourceHash.equals(target)) {
+            return;
+        }
+        rangesMismatched.incrementAndGet();
+        long documents = Math.max(sourceHash.documents(), target.documents());
+        log.debug("Range {} of {} differs at depth {}: {} source and {} target documents", range, side.namespace(),
+                depth, sourceHash.documents(), target.documents());
+        if (depth < settings.getMaxDepth() && documents > settings.getLeafDocuments()) {
+            List<IdRange> parts = IdRangeSplitter.split(side.sourceKeys(), range, settings.getSplitFactor(), documents);
+            if (parts.size() > 1) {
+                rangesTotal.addAndGet(parts.size());
+                for (IdRange part : parts) {
+                    verifyRange(side, part, depth + 1, settings, targetPool);
+                }
+                return;
+            }
+        }
+        compareDocuments(side, range, settings.getBatchSize());
+    }
+
+    private RangeHash hash(MongoCollection<RawBsonDocument> collection, IdRange range, VerifySettings settings,
+                           boolean onServer) throws InterruptedException {
+        return onServer ? hashOnServer(collection, range) : hashLocally(collection, range, settings.getBatchSize());
+    }
+
+    // Field order counts, as it does for the byte comparison of documents. The sum is taken as a
+    // decimal so it cannot overflow.
+    private RangeHash hashOnServer(MongoCollection<RawBsonDocument> collection, IdRange range)
+            throws InterruptedException {
+        BsonDocument result = collection.aggregate(List.of(
+                        Aggregates.match(range.toFilter()),
+                        Aggregates.group(null,
+                                Accumulators.sum("documents", 1),
+                                Accumulators.sum("hash", new BsonDocument("$toDecimal",
+                                        new BsonDocument("$toHashedIndexKey", new BsonString("$$ROOT")))))),
+                        BsonDocument.class)
+                .first();
+        if (result == null) {
+            return new RangeHash(0, "");
+        }
+        long documents = result.getNumber("documents").longValue();
+        // Each document is still read once on each server
+        throttle(documents);
+        return new RangeHash(documents, result.getDecimal128("hash").getValue().toString());
+    }
+
+    private RangeHash hashLocally(MongoCollection<RawBsonDocument> collection, IdRange range, int batchSize)
+            throws InterruptedException {
+        MessageDigest digest = sha256();
+        long documents = 0;
+        try (MongoCursor<RawBsonDocument> cursor = collection.find(range.toFilter())
+                .sort(Sorts.ascending("_id"))
+                .batchSize(batchSize)
+                .cursor()) {
+            while (cursor.hasNext()) {
+                digest.update(cursor.next().getByteBuffer().asNIO());
+                if (++documents % batchSize == 0) {
+                    throttle(batchSize);
+                }
+            }
+        }
+        throttle(documents % batchSize);
+        return new RangeHash(documents, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    // Source to target finds missing and different documents, target to source finds extra ones
+    private void compareDocuments(Side side, IdRange range, int batchSize) throws InterruptedException {
+        List<RawBsonDocument> batch = new ArrayList<>(batchSize);
+        try (MongoCursor<RawBsonDocument> cursor = side.source().find(range.toFilter()).batchSize(batchSize).cursor()) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    compareBatch(side, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            compareBatch(side, batch);
+        }
+
+        List<BsonValue> ids = new ArrayList<>(batchSize);
+        try (MongoCursor<RawBsonDocument> cursor = side.target().find(range.toFilter())
+                .projection(Projections.include("_id"))
+                .batchSize(batchSize)
+                .cursor()) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next().get("_id"));
+                if (ids.size() >= batchSize) {
+                    findExtra(side, ids);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            findExtra(side, ids);
+        }
+    }
+
+    private void compareBatch(Side side, List<RawBsonDocument> sourceDocuments) throws InterruptedException {
+        throttle(sourceDocuments.size() * 2L);
+        List<BsonValue> ids = new ArrayList<>(sourceDocuments.size());
+        for (RawBsonDocument document : sourceDocuments) {
+            ids.add(document.get("_id"));
+        }
+        Map<BsonValue, RawBsonDocument> targetDocuments = new HashMap<>();
+        for (RawBsonDocument document : side.target().find(Filters.in("_id", ids))) {
+            targetDocuments.put(document.get("_id"), document);
+        }
+        for (RawBsonDocument document : sourceDocuments) {
+            RawBsonDocument targetDocument = targetDocuments.get(document.get("_id"));
+            if (targetDocument == null) {
+                documentsMissing.incrementAndGet();
+                difference(side);
+                if (repair) {
+                    repairMissing(side, document);
+                }
+            } else if (!sameBytes(document, targetDocument)) {
+                // Byte comparison: field order counts, as it does for the hashes
+                documentsDifferent.incrementAndGet();
+                difference(side);
+                if (repair) {
+                    repairDifferent(side, document.get("_id"), targetDocument);
+                }
+            }
+        }
+    }
+
+    private void findExtra(Side side, List<BsonValue> targetIds) throws InterruptedException {
+        throttle(targetIds.size() * 2L);
+        Set<BsonValue> sourceIds = new HashSet<>();
+        for (RawBsonDocument document : side.source().find(Filters.in("_id", targetIds))
+                .projection(Projections.include("_id"))) {
+            sourceIds.add(document.get("_id"));
+        }
+        for (BsonValue id : targetIds) {
+            if (!sourceIds.contains(id)) {
+                documentsExtra.incrementAndGet();
+                difference(side);
+                if (repair) {
+                    repairExtra(side, id);
+                }
+            }
+        }
+    }
+
+    // Inserted as read; if the source deleted it meanwhile, the change stream may already have
+    // applied that delete, so the copy is removed again
+    private void repairMissing(Side side, RawBsonDocument document) {
+        try {
+            side.target().insertOne(document);
+            documentsRepaired.incrementAndGet();
+            if (side.source().find(Filters.eq("_id", document.get("_id"))).first() == null) {
+                side.target().deleteOne(sameAs(document));
+            }
+        } catch (MongoWriteException e) {
+            if (e.getError().getCode() != DUPLICATE_KEY) {
+                repairFailed(side, document.get("_id"), e);
+            }
+            // Otherwise the change stream inserted it first
+        } catch (Exception e) {
+            repairFailed(side, document.get("_id"), e);
+        }
+    }
+
+    // Replaced with the current source version, only while the target still holds the copy compared
+    private void repairDifferent(Side side, BsonValue id, RawBsonDocument targetDocument) {
+        try {
+            RawBsonDocument current = side.source().find(Filters.eq("_id", id)).first();
+            if (current == null) {
+                side.target().deleteOne(sameAs(targetDocument));
+            } else {
+                side.target().replaceOne(sameAs(targetDocument), current);
+            }
+            documentsRepaired.incrementAndGet();
+        } catch (Exception e) {
+            repairFailed(side, id, e);
+        }
+    }
+
+    private void repairExtra(Side side, BsonValue id) {
+        try {
+            RawBsonDocument targetDocument = side.target().find(Filters.eq("_id", id)).first();
+            if (targetDocument != null && side.source().find(Filters.eq("_id", id)).first() == null) {
+                side.target().deleteOne(sameAs(targetDocument));
+                documentsRepaired.incrementAndGet();
+            }
+        } catch (Exception e) {
+            repairFailed(side, id, e);
+        }
+    }
+
+    private void repairFailed(Side side, BsonValue id, Exception e) {
+        errors.incrementAndGet();
+        log.error("Failed to repair {} in {}: {}", id, side.namespace(), e.getMessage(), e);
+    }
+
+    // Matches the document only while it is byte for byte the given version
+    private static Bson sameAs(RawBsonDocument document) {
+        return Filters.and(Filters.eq("_id", document.get("_id")),
+                Filters.expr(new BsonDocument("$eq", new BsonArray(List.of(new BsonString("$$ROOT"),
+                        new BsonDocument("$literal", document))))));
+    }
+
+    private static boolean sameBytes(RawBsonDocument a, RawBsonDocument b) {
+        return a.getByteBuffer().asNIO().equals(b.getByteBuffer().asNIO());
+    }
+
+    private Side side(String namespace, String database, String collection) {
+        return new Side(namespace,
+                sourceMongoClient.getDatabase(database).getCollection(collection, RawBsonDocument.class),
+                targetMongoClient.getDatabase(database).getCollection(collection, RawBsonDocument.class),
+                sourceMongoClient.getDatabase(database).getCollection(collection, BsonDocument.class));
+    }
+
+    private void difference(Side side) {
+        differencesByNamespace.computeIfAbsent(side.namespace(), namespace -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void throttle(long documents) throws InterruptedException {
+        TokenBucket bucket = throttle;
+        if (bucket != null && documents > 0) {
+            bucket.take(documents);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void reset(boolean repair) {
+        state = "STARTING";
+        message = null;
+        startedAt = Instant.now();
+        finishedAt = null;
+        this.repair = repair;
+        collectionsTotal.set(0);
+        collectionsDone.set(0);
+        rangesTotal.set(0);
+        rangesChecked.set(0);
+        rangesMismatched.set(0);
+        documentsCompared.set(0);
+        documentsMissing.set(0);
+        documentsExtra.set(0);
+        documentsDifferent.set(0);
+        documentsRepaired.set(0);
+        errors.set(0);
+        differencesByNamespace.clear();
+    }
+
+    private record RangeHash(long documents, String hash) {
+    }
+
+    // One collection on both clusters; sourceKeys is the view the range splitter samples
+    private record Side(String namespace, MongoCollection<RawBsonDocument> source,
+                        MongoCollection<RawBsonDocument> target, MongoCollection<BsonDocument> sourceKeys) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.partreplication.dto.RecorderSettings;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeEventReplayReaderTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentNamesMatchOnlyTheirOwnStream() {
+        assertTrue(ChangeEventRecorder.segmentPattern("sales")
+                .matcher("sales-20250101-120000-000-000000.bson.gz").matches());
+        assertTrue(ChangeEventRecorder.segmentPattern("sales")
+                .matcher("sales-20250101-120000-000-000001.bson").matches());
+        assertFalse(ChangeEventRecorder.segmentPattern("sales")
+                .matcher("sales-eu-20250101-120000-000-000000.bson.gz").matches());
+        assertFalse(ChangeEventRecorder.segmentPattern("sales")
+                .matcher("sales-cluster-20250101-120000-000-000000.bson.gz").matches());
+        assertTrue(ChangeEventRecorder.segmentPattern("sales-cluster")
+                .matcher("sales-cluster-20250101-120000-000-000000.bson.gz").matches());
+    }
+
+    @Test
+    void replaysOnlyTheRequestedStream() throws IOException {
+        RecorderSettings settings = new RecorderSettings();
+        settings.setDirectory(directory.toString());
+        record(settings, "sales", 1, 2);
+        record(settings, "sales-eu", 3);
+        record(settings, "sales-cluster", 4);
+
+        assertEquals(List.of("1", "2"), replay("sales"));
+        assertEquals(List.of("3"), replay("sales-eu"));
+    }
+
+    private static void record(RecorderSettings settings, String stream, int... ids) throws IOException {
+        try (ChangeEventRecorder recorder = new ChangeEventRecorder(settings, stream)) {
+            for (int id : ids) {
+                recorder.record(RawBsonDocument.parse("{_id: {_data: '" + id + "'}, operationType: 'delete',"
+                        + " ns: {db: 'sales', coll: 'orders'}, documentKey: {_id: " + id + "}}")
+                        .decode(ChangeEventRecorder.CODEC));
+            }
+        }
+    }
+
+    private List<String> replay(String stream) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (ChangeEventReplayReader reader = new ChangeEventReplayReader(directory, stream)) {
+            ChangeStreamDocument<RawBsonDocument> change;
+            while ((change = reader.next()) != null) {
+                tokens.add(change.getResumeToken().getString("_data").getValue());
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.partreplication.dto.FilterSettings;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeStreamPipelineBuilderTests {
+
+    @Test
+    void ruleWithoutIncludeOrExcludeKeepsItsDatabase() {
+        FilterSettings filter = new FilterSettings();
+        filter.getCollections().add(rule("sales", List.of(), List.of()));
+        ChangeStreamPipelineBuilder builder = new ChangeStreamPipelineBuilder(List.of("sales"), List.of(), filter);
+
+        assertTrue(builder.matchesCollection("sales", "orders"));
+        BsonDocument match = builder.build().get(0).toBsonDocument();
+        assertEquals(BsonDocument.parse("{$nin: []}"), findNin(match));
+    }
+
+    @Test
+    void ruleWithIncludeFiltersOnlyItsDatabase() {
+        FilterSettings filter = new FilterSettings();
+        filter.getCollections().add(rule("sales", List.of("orders"), List.of()));
+        ChangeStreamPipelineBuilder builder = new ChangeStreamPipelineBuilder(List.of("sales"), List.of(), filter);
+
+        assertTrue(builder.matchesCollection("sales", "orders"));
+        assertFalse(builder.matchesCollection("sales", "audit"));
+        assertEquals(BsonDocument.parse("{$nin: ['sales']}"), findNin(builder.build().get(0).toBsonDocument()));
+    }
+
+    @Test
+    void ruleWithoutDatabaseIsRejected() {
+        FilterSettings filter = new FilterSettings();
+        filter.getCollections().add(rule(null, List.of("orders"), List.of()));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChangeStreamPipelineBuilder(List.of("sales"), List.of(), filter));
+    }
+
+    @Test
+    void projectionWithoutCollectionIsRejected() {
+        FilterSettings filter = new FilterSettings();
+        FilterSettings.ProjectionRule projection = new FilterSettings.ProjectionRule();
+        projection.setNamespace("sales");
+        filter.getProjections().add(projection);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChangeStreamPipelineBuilder(List.of("sales"), List.of(), filter));
+    }
+
+    private static FilterSettings.CollectionRule rule(String database, List<String> include, List<String> exclude) {
+        FilterSettings.CollectionRule rule = new FilterSettings.CollectionRule();
+        rule.setDatabase(database);
+        rule.setInclude(include);
+        rule.setExclude(exclude);
+        return rule;
+    }
+
+    // The ns.db condition of the branch that passes databases without a collection rule
+    private static BsonDocument findNin(BsonDocument document) {
+        for (String key : document.keySet()) {
+            if (key.equals("ns.db") && document.get(key).isDocument()
+                    && document.getDocument(key).containsKey("$nin")) {
+                return document.getDocument(key);
+            }
+            if (document.get(key).isDocument()) {
+                BsonDocument found = findNin(document.getDocument(key));
+                if (found != null) {
+                    return found;
+                }
+            } else if (document.get(key).isArray()) {
+                for (BsonValue value : document.getArray(key)) {
+                    if (value.isDocument()) {
+                        BsonDocument found = findNin(value.asDocument());
+                        if (found != null) {
+                            return found;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.partreplication.dto.CheckpointSettings;
+import com.mongodb.partreplication.dto.TokenCollection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CheckpointManagerTests {
+
+    private final CheckpointSettings settings = new CheckpointSettings();
+    private MongoCollection<BsonDocument> tokens;
+    private ReplicationMetrics metrics;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        tokens = mock(MongoCollection.class);
+        metrics = new ReplicationMetrics(new SimpleMeterRegistry());
+        settings.setHistoryEnabled(false);
+    }
+
+    @Test
+    void persistsEveryNEvents() {
+        settings.setEveryEvents(10);
+        settings.setIntervalMs(Long.MAX_VALUE);
+        CheckpointManager manager = manager();
+
+        manager.update(watermark(5));
+        assertPersisted(0);
+        manager.update(watermark(10));
+        assertPersisted(1);
+        manager.update(watermark(19));
+        assertPersisted(1);
+        manager.update(watermark(20));
+        assertPersisted(2);
+        assertEquals(20, metrics.getLastCheckpointSequence());
+    }
+
+    @Test
+    void persistsOnTheIntervalBelowNEvents() {
+        settings.setEveryEvents(Long.MAX_VALUE);
+        settings.setIntervalMs(0);
+        CheckpointManager manager = manager();
+
+        manager.update(watermark(1));
+        assertPersisted(1);
+        // Due again, but the watermark has not moved: nothing new to store
+        manager.update(null);
+        assertPersisted(1);
+        manager.update(watermark(2));
+        assertPersisted(2);
+    }
+
+    @Test
+    void flushPersistsWhatIsPending() {
+        settings.setEveryEvents(10);
+        settings.setIntervalMs(Long.MAX_VALUE);
+        CheckpointManager manager = manager();
+
+        manager.update(watermark(3));
+        assertPersisted(0);
+        manager.flush();
+        assertPersisted(1);
+        manager.flush();
+        assertPersisted(1);
+    }
+
+    @Test
+    void failedPersistIsRetriedOnTheNextUpdate() {
+        settings.setEveryEvents(1);
+        settings.setIntervalMs(Long.MAX_VALUE);
+        doThrow(new MongoException("target unavailable")).doReturn(null)
+                .when(tokens).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+        CheckpointManager manager = manager();
+
+        manager.update(watermark(1));
+        assertEquals(0, metrics.getLastCheckpointSequence());
+        manager.update(null);
+        assertPersisted(2);
+        assertEquals(1, metrics.getLastCheckpointSequence());
+    }
+
+    private CheckpointManager manager() {
+        MongoClient client = mock(MongoClient.class);
+        MongoDatabase database = mock(MongoDatabase.class);
+        when(client.getDatabase(anyString())).thenReturn(database);
+        when(database.getCollection(anyString(), eq(BsonDocument.class))).thenReturn(tokens);
+        return new CheckpointManager(client, new TokenCollection("replication", "tokens", 0), settings,
+                "lastResumeToken", metrics);
+    }
+
+    private void assertPersisted(int count) {
+        verify(tokens, times(count)).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+    }
+
+    private static CheckpointTracker.Watermark watermark(long sequence) {
+        return new CheckpointTracker.Watermark(sequence, new BsonDocument("_data",
+                new BsonString(String.valueOf(sequence))));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mongodb.partreplication.service;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CheckpointTrackerTests {
+
+    private final CheckpointTracker tracker = new CheckpointTracker();
+
+    @Test
+    void nothingBegunHasNoWatermark() {
+        assertNull(tracker.advance());
+        assertEquals(0, tracker.lastSequence());
+    }
+
+    @Test
+    void watermarkNeverPassesAnEventInFlight() {
+        long first = tracker.begin(token(1));
+        long second = tracker.begin(token(2));
+        long third = tracker.begin(token(3));
+
+        // Later events applied first: the oldest still holds the watermark back
+        tracker.complete(second);
+        tracker.complete(third);
+        assertNull(tracker.advance());
+        assertEquals(1, tracker.inFlightCount());
+
+        tracker.complete(first);
+        assertWatermark(3, tracker.advance());
+        assertEquals(0, tracker.inFlightCount());
+    }
+
+    @Test
+    void watermarkStopsBeforeTheLowestEventInFlight() {
+        long first = tracker.begin(token(1));
+        tracker.begin(token(2));
+        long third = tracker.begin(token(3));
+
+        tracker.complete(first);
+        tracker.complete(third);
+        assertWatermark(1, tracker.advance());
+    }
+
+    @Test
+    void watermarkOnlyMovesForward() {
+        tracker.complete(tracker.begin(token(1)));
+        assertWatermark(1, tracker.advance());
+        // Nothing newer applied since: no watermark to persist
+        assertNull(tracker.advance());
+
+        long second = tracker.begin(token(2));
+        assertNull(tracker.advance());
+        tracker.complete(second);
+        assertWatermark(2, tracker.advance());
+        assertEquals(2, tracker.lastSequence());
+    }
+
+    @Test
+    void coalescedSequencesCompleteWithTheirSurvivor() {
+        long firstVersion = tracker.begin(token(1));
+        long other = tracker.begin(token(2));
+        long secondVersion = tracker.begin(token(3));
+        ReplicationEvent survivor = new ReplicationEvent(secondVersion, null, null, null, List.of(firstVersion));
+
+        tracker.complete(other);
+        assertNull(tracker.advance());
+
+        // The survivor alone does not move it: the event it replaced is still in flight
+        tracker.complete(survivor.sequence());
+        assertNull(tracker.advance());
+
+        survivor.coalescedSequences().forEach(tracker::complete);
+        assertWatermark(3, tracker.advance());
+    }
+
+    private static void assertWatermark(long sequence, CheckpointTracker.Watermark watermark) {
+        assertEquals(sequence, watermark.sequence());
+        assertEquals(token(sequence), watermark.token());
+    }
+
+    private static BsonDocument token(long sequence) {
+        return new BsonDocument("_data", new BsonString(String.valueOf(sequence)));
+    }
+}
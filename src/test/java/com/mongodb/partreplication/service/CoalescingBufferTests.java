@@ -0,0 +1,227 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingBufferTests {
+
+    private static final MongoNamespace NAMESPACE = new MongoNamespace("sales", "orders");
+
+    private final List<ReplicationEvent> applied = new ArrayList<>();
+    private ReplicationMetrics metrics;
+    private CoalescingBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new ReplicationMetrics(new SimpleMeterRegistry());
+        buffer = new CoalescingBuffer(1000, 100, applied::add, metrics);
+    }
+
+    @Test
+    void insertThenDeltaUpdateAppliesBothInOrder() {
+        ReplicationEvent insert = event(1, 1, insert(1, 1));
+        ReplicationEvent update = event(2, 1, new UpdateOneModel<>(key(1), BsonDocument.parse("{$set: {v: 2}}")));
+
+        buffer.add(insert);
+        buffer.add(update);
+        assertEquals(List.of(insert), applied);
+
+        buffer.flush();
+        assertEquals(List.of(insert, update), applied);
+        assertEquals(0, metrics.getTotal(ReplicationMetrics.COALESCED));
+    }
+
+    @Test
+    void insertThenReplaceBecomesAnUpsert() {
+        buffer.add(event(1, 1, insert(1, 1)));
+        buffer.add(event(2, 1, replace(1, 2)));
+        buffer.flush();
+
+        ReplicationEvent survivor = single();
+        ReplaceOneModel<RawBsonDocument> replace = assertInstanceOf(ReplaceOneModel.class, survivor.model());
+        assertTrue(replace.getReplaceOptions().isUpsert());
+        assertEquals(document(1, 2), replace.getReplacement());
+        assertEquals(2, survivor.sequence());
+        assertEquals(List.of(1L), survivor.coalescedSequences());
+    }
+
+    @Test
+    void updateThenDeleteKeepsTheDelete() {
+        buffer.add(event(1, 1, new UpdateOneModel<>(key(1), BsonDocument.parse("{$set: {v: 2}}"))));
+        DeleteOneModel<RawBsonDocument> delete = new DeleteOneModel<>(key(1));
+        buffer.add(event(2, 1, delete));
+        buffer.flush();
+
+        ReplicationEvent survivor = single();
+        assertSame(delete, survivor.model());
+        assertEquals(List.of(1L), survivor.coalescedSequences());
+        assertEquals(1, metrics.getTotal(ReplicationMetrics.COALESCED));
+    }
+
+    @Test
+    void insertThenDeleteStillDeletes() {
+        buffer.add(event(1, 1, insert(1, 1)));
+        buffer.add(event(2, 1, new DeleteOneModel<>(key(1))));
+        buffer.flush();
+
+        assertInstanceOf(DeleteOneModel.class, single().model());
+    }
+
+    @Test
+    void deleteThenInsertBecomesAnUpsert() {
+        buffer.add(event(1, 1, new DeleteOneModel<>(key(1))));
+        buffer.add(event(2, 1, insert(1, 2)));
+        buffer.flush();
+
+        ReplaceOneModel<RawBsonDocument> replace = assertInstanceOf(ReplaceOneModel.class, single().model());
+        assertTrue(replace.getReplaceOptions().isUpsert());
+        assertEquals(key(1), replace.getFilter());
+        assertEquals(document(1, 2), replace.getReplacement());
+    }
+
+    @Test
+    void deleteThenDeltaUpdateAppliesBothInOrder() {
+        ReplicationEvent delete = event(1, 1, new DeleteOneModel<>(key(1)));
+        ReplicationEvent update = event(2, 1, new UpdateOneModel<>(key(1), BsonDocument.parse("{$set: {v: 2}}")));
+
+        buffer.add(delete);
+        buffer.add(update);
+        buffer.flush();
+
+        assertEquals(List.of(delete, update), applied);
+    }
+
+    @Test
+    void replaceChainKeepsTheLastReplace() {
+        buffer.add(event(1, 1, replace(1, 1)));
+        buffer.add(event(2, 1, replace(1, 2)));
+        buffer.add(event(3, 1, replace(1, 3)));
+        buffer.flush();
+
+        ReplicationEvent survivor = single();
+        ReplaceOneModel<RawBsonDocument> replace = assertInstanceOf(ReplaceOneModel.class, survivor.model());
+        assertFalse(replace.getReplaceOptions().isUpsert());
+        assertEquals(document(1, 3), replace.getReplacement());
+        assertEquals(3, survivor.sequence());
+        assertEquals(List.of(1L, 2L), survivor.coalescedSequences());
+        assertEquals(2, metrics.getTotal(ReplicationMetrics.COALESCED));
+    }
+
+    @Test
+    void replaceChainAfterAnInsertStaysAnUpsert() {
+        buffer.add(event(1, 1, insert(1, 1)));
+        buffer.add(event(2, 1, replace(1, 2)));
+        buffer.add(event(3, 1, replace(1, 3)));
+        buffer.flush();
+
+        ReplicationEvent survivor = single();
+        ReplaceOneModel<RawBsonDocument> replace = assertInstanceOf(ReplaceOneModel.class, survivor.model());
+        assertTrue(replace.getReplaceOptions().isUpsert());
+        assertEquals(document(1, 3), replace.getReplacement());
+        assertEquals(List.of(1L, 2L), survivor.coalescedSequences());
+    }
+
+    @Test
+    void differentDocumentsAreNotMerged() {
+        buffer.add(event(1, 1, replace(1, 1)));
+        buffer.add(event(2, 2, replace(2, 1)));
+        buffer.flush();
+
+        assertEquals(2, applied.size());
+        assertEquals(List.of(1L, 2L), applied.stream().map(ReplicationEvent::sequence).toList());
+    }
+
+    @Test
+    void fullWindowIsFlushed() {
+        buffer = new CoalescingBuffer(60_000, 2, applied::add, metrics);
+        buffer.add(event(1, 1, replace(1, 1)));
+        assertTrue(applied.isEmpty());
+
+        buffer.add(event(2, 2, replace(2, 1)));
+        assertEquals(2, applied.size());
+    }
+
+    @Test
+    void coalescedSequencesStayInFlightUntilTheSurvivorIsApplied() {
+        CheckpointTracker tracker = new CheckpointTracker();
+        List<ReplicationEvent> events = new ArrayList<>();
+        for (int version = 1; version <= 3; version++) {
+            ChangeStreamDocument<RawBsonDocument> change = change(version, 1);
+            long seq = tracker.begin(change.getResumeToken());
+            events.add(new ReplicationEvent(seq, change, NAMESPACE, replace(1, version)));
+        }
+
+        events.forEach(buffer::add);
+        assertNull(tracker.advance());
+        buffer.flush();
+        // Handed to the applier but not yet written: the watermark must not pass any of the three
+        assertNull(tracker.advance());
+        assertEquals(3, tracker.inFlightCount());
+
+        // What the apply engine does once the survivor's batch is written
+        ReplicationEvent survivor = single();
+        survivor.coalescedSequences().forEach(tracker::complete);
+        tracker.complete(survivor.sequence());
+
+        CheckpointTracker.Watermark watermark = tracker.advance();
+        assertEquals(3, watermark.sequence());
+        assertEquals(token(3), watermark.token());
+    }
+
+    private ReplicationEvent single() {
+        assertEquals(1, applied.size());
+        return applied.get(0);
+    }
+
+    private static ReplicationEvent event(long sequence, int id, WriteModel<RawBsonDocument> model) {
+        return new ReplicationEvent(sequence, change(sequence, id), NAMESPACE, model);
+    }
+
+    private static ChangeStreamDocument<RawBsonDocument> change(long sequence, int id) {
+        return RawBsonDocument.parse("{_id: " + token(sequence).toJson() + ", operationType: 'update',"
+                        + " ns: {db: 'sales', coll: 'orders'}, documentKey: {_id: " + id + "}}")
+                .decode(ChangeEventRecorder.CODEC);
+    }
+
+    private static BsonDocument token(long sequence) {
+        return BsonDocument.parse("{_data: '" + String.format("%04d", sequence) + "'}");
+    }
+
+    private static BsonDocument key(int id) {
+        return new BsonDocument("_id", new BsonInt32(id));
+    }
+
+    private static RawBsonDocument document(int id, int version) {
+        return RawBsonDocument.parse("{_id: " + id + ", v: " + version + "}");
+    }
+
+    private static InsertOneModel<RawBsonDocument> insert(int id, int version) {
+        return new InsertOneModel<>(document(id, version));
+    }
+
+    private static ReplaceOneModel<RawBsonDocument> replace(int id, int version) {
+        return new ReplaceOneModel<>(key(id), document(id, version), new ReplaceOptions().upsert(false));
+    }
+}
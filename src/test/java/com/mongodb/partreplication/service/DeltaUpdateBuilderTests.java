@@ -0,0 +1,88 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.TruncatedArray;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeltaUpdateBuilderTests {
+
+    @Test
+    void setsAndUnsetsChangedFields() {
+        BsonDocument update = DeltaUpdateBuilder.toUpdate(new UpdateDescription(List.of("c", "d.e"),
+                BsonDocument.parse("{a: 1, 'b.x': 'y'}"), null, null));
+
+        assertEquals(BsonDocument.parse("{$set: {a: 1, 'b.x': 'y'}, $unset: {c: '', 'd.e': ''}}"), update);
+    }
+
+    @Test
+    void emptyDescriptionIsAnEmptyUpdate() {
+        assertEquals(new BsonDocument(), DeltaUpdateBuilder.toUpdate(
+                new UpdateDescription(List.of(), new BsonDocument(), List.of(), null)));
+    }
+
+    @Test
+    void noDescriptionNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(null));
+    }
+
+    @Test
+    void truncatedArrayBecomesASlice() {
+        BsonDocument update = DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{other: 1}"), List.of(new TruncatedArray("items", 2)), null));
+
+        assertEquals(BsonDocument.parse("{$set: {other: 1}, $push: {items: {$each: [], $slice: 2}}}"), update);
+    }
+
+    @Test
+    void truncatedArrayOverlappingAnUpdatedElementNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{'items.1': 'x'}"), List.of(new TruncatedArray("items", 2)), null)));
+    }
+
+    @Test
+    void truncatedArrayInsideAnUpdatedParentNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{doc: {items: []}}"), List.of(new TruncatedArray("doc.items", 0)), null)));
+    }
+
+    @Test
+    void truncatedArrayOverlappingARemovedFieldNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(List.of("items.3.tag"), null,
+                List.of(new TruncatedArray("items", 3)), null)));
+    }
+
+    @Test
+    void truncatedArrayWithASimilarlyNamedFieldIsKept() {
+        BsonDocument update = DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{itemsCount: 2}"), List.of(new TruncatedArray("items", 2)), null));
+
+        assertEquals(BsonDocument.parse("{$set: {itemsCount: 2}, $push: {items: {$each: [], $slice: 2}}}"), update);
+    }
+
+    @Test
+    void dollarPrefixedPathNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{'a.$b': 1}"), null, null)));
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(List.of("$c"), null, null, null)));
+    }
+
+    @Test
+    void emptyPathPartNeedsAFullReplace() {
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(null,
+                BsonDocument.parse("{'a..b': 1}"), null, null)));
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(List.of("a."), null, null, null)));
+    }
+
+    @Test
+    void dottedFieldNameNeedsAFullReplace() {
+        // A field literally named "a.b": the server reports its path components in disambiguatedPaths
+        assertNull(DeltaUpdateBuilder.toUpdate(new UpdateDescription(null, BsonDocument.parse("{'a.b': 1}"), null,
+                BsonDocument.parse("{'a.b': ['a.b']}"))));
+    }
+}
@@ -0,0 +1,116 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.partreplication.dto.ApplySettings;
+import com.mongodb.partreplication.dto.FlowControlSettings;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FlowControllerTests {
+
+    private static final List<WriteModel<RawBsonDocument>> WRITE =
+            List.of(new DeleteOneModel<>(BsonDocument.parse("{_id: 1}")));
+
+    private final FlowControlSettings settings = new FlowControlSettings();
+    private final ApplySettings applySettings = new ApplySettings();
+
+    @BeforeEach
+    void setUp() {
+        settings.setEnabled(true);
+        settings.setMinBatchSize(10);
+        settings.setDecreaseFactor(0.5);
+        applySettings.setBatchSize(100);
+        applySettings.setWorkers(4);
+    }
+
+    @Test
+    void slowWritesCutTheLimitsOncePerLatencyWindow() throws InterruptedException {
+        settings.setTargetLatencyMs(1000);
+        FlowController controller = new FlowController(settings, applySettings, 1);
+
+        write(controller, TimeUnit.SECONDS.toNanos(2), false);
+        assertEquals(50, controller.getBatchSizeLimit());
+        assertEquals(2, controller.getConcurrencyLimit());
+
+        // Writes that were in flight with the first report the same strain: no second cut
+        write(controller, TimeUnit.SECONDS.toNanos(2), false);
+        write(controller, 0, true);
+        assertEquals(50, controller.getBatchSizeLimit());
+        assertEquals(2, controller.getConcurrencyLimit());
+    }
+
+    @Test
+    void cutsStopAtTheMinimums() throws InterruptedException {
+        settings.setTargetLatencyMs(1);
+        FlowController controller = new FlowController(settings, applySettings, 1);
+
+        for (int i = 0; i < 10; i++) {
+            write(controller, 0, true);
+            // Past the latency window, so every failure cuts again
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+        assertEquals(10, controller.getBatchSizeLimit());
+        assertEquals(1, controller.getConcurrencyLimit());
+    }
+
+    @Test
+    void fastWritesGrowTheLimitsBackToTheirMaximums() throws InterruptedException {
+        settings.setTargetLatencyMs(1000);
+        FlowController controller = new FlowController(settings, applySettings, 1);
+        write(controller, 0, true);
+
+        // Additive: a twentieth of the batch size per fast write, one writer per round at the current concurrency
+        write(controller, 0, false);
+        assertEquals(55, controller.getBatchSizeLimit());
+        write(controller, 0, false);
+        assertEquals(3, controller.getConcurrencyLimit());
+
+        for (int i = 0; i < 100; i++) {
+            write(controller, 0, false);
+        }
+        assertEquals(100, controller.getBatchSizeLimit());
+        assertEquals(4, controller.getConcurrencyLimit());
+    }
+
+    @Test
+    void interruptedAcquireGivesBackItsSlot() throws InterruptedException {
+        settings.setMaxOpsPerSecond(1);
+        FlowController controller = new FlowController(settings, applySettings, 1);
+        controller.acquire(WRITE);
+
+        // The bucket is empty, so the next write has to wait a second for its permit
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> controller.acquire(WRITE));
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(1, controller.toStatus().getInFlightWrites());
+
+        controller.release(0, false);
+        assertEquals(0, controller.toStatus().getInFlightWrites());
+    }
+
+    @Test
+    void disabledControllerNeverLimits() throws InterruptedException {
+        settings.setEnabled(false);
+        FlowController controller = new FlowController(settings, applySettings, 2);
+
+        write(controller, TimeUnit.SECONDS.toNanos(10), true);
+        assertEquals(100, controller.getBatchSizeLimit());
+        assertEquals(8, controller.getConcurrencyLimit());
+    }
+
+    private static void write(FlowController controller, long latencyNanos, boolean overloaded)
+            throws InterruptedException {
+        controller.acquire(WRITE);
+        controller.release(latencyNanos, overloaded);
+    }
+}
@@ -0,0 +1,148 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdRangeSplitterTests {
+
+    private static final long DOCUMENTS = 10_000;
+
+    @Test
+    void rangesAreDisjointAndCoverEveryId() {
+        // Numeric _ids of all three types compare with each other; strings and ObjectIds are left to the catch-all
+        List<BsonValue> ids = numericIds(3000);
+        for (int i = 0; i < 20; i++) {
+            ids.add(new BsonString("order-" + i));
+            ids.add(new BsonObjectId());
+        }
+
+        List<IdRange> ranges = IdRangeSplitter.split(collection(everyTenth(numericIds(3000))), IdRange.all(), 4,
+                DOCUMENTS);
+
+        assertEquals(5, ranges.size());
+        assertTrue(ranges.get(4).isCatchAll());
+        assertEachMatchedOnce(ranges, ids);
+    }
+
+    @Test
+    void drillDownStaysInsideItsRange() {
+        IdRange parent = IdRange.between(new BsonInt32(1000), new BsonInt64(2000));
+        List<BsonValue> inside = numericIds(3000).stream().filter(id -> matches(parent.toFilter(), id)).toList();
+
+        List<IdRange> ranges = IdRangeSplitter.split(collection(everyTenth(inside)), parent, 4, DOCUMENTS);
+
+        assertEquals(4, ranges.size());
+        assertEquals(parent.lower(), ranges.get(0).lower());
+        assertEquals(parent.upper(), ranges.get(3).upper());
+        assertTrue(ranges.stream().noneMatch(IdRange::isCatchAll));
+        assertEachMatchedOnce(ranges, inside);
+        for (BsonValue outside : List.of(new BsonInt32(999), new BsonDouble(2000.0), new BsonString("order-1"))) {
+            assertTrue(ranges.stream().noneMatch(range -> matches(range.toFilter(), outside)));
+        }
+    }
+
+    @Test
+    void sampleOfMixedTypeBracketsIsNotSplit() {
+        List<BsonValue> sample = everyTenth(numericIds(300));
+        for (int i = 0; i < 10; i++) {
+            sample.add(new BsonString("order-" + i));
+        }
+
+        assertEquals(List.of(IdRange.all()), IdRangeSplitter.split(collection(sample), IdRange.all(), 4, DOCUMENTS));
+    }
+
+    @Test
+    void smallCollectionIsNotSplit() {
+        MongoCollection<BsonDocument> collection = collection(everyTenth(numericIds(300)));
+
+        assertEquals(List.of(IdRange.all()), IdRangeSplitter.split(collection, IdRange.all(), 4, 3999));
+    }
+
+    private static void assertEachMatchedOnce(List<IdRange> ranges, List<BsonValue> ids) {
+        for (BsonValue id : ids) {
+            long matching = ranges.stream().filter(range -> matches(range.toFilter(), id)).count();
+            assertEquals(1, matching, () -> id + " matched " + matching + " of " + ranges);
+        }
+    }
+
+    // Evaluates a range filter the way the server does: $gte and $lt only match within the bound's type bracket
+    private static boolean matches(BsonDocument filter, BsonValue id) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        BsonDocument condition = filter.getDocument("_id");
+        if (condition.containsKey("$not")) {
+            return !bracket(id).equals(condition.getDocument("$not").get("$type"));
+        }
+        if (!id.isNumber()) {
+            return false;
+        }
+        double value = id.asNumber().doubleValue();
+        return (!condition.containsKey("$gte") || value >= condition.get("$gte").asNumber().doubleValue())
+                && (!condition.containsKey("$lt") || value < condition.get("$lt").asNumber().doubleValue());
+    }
+
+    private static BsonValue bracket(BsonValue id) {
+        return id.isNumber() ? new BsonString("number") : new BsonInt32(id.getBsonType().getValue());
+    }
+
+    // Ascending ids cycling through int32, int64 and double
+    private static List<BsonValue> numericIds(int count) {
+        List<BsonValue> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(switch (i % 3) {
+                case 0 -> new BsonInt32(i);
+                case 1 -> new BsonInt64(i);
+                default -> new BsonDouble(i + 0.5);
+            });
+        }
+        return ids;
+    }
+
+    private static List<BsonValue> everyTenth(List<BsonValue> ids) {
+        List<BsonValue> sample = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 10) {
+            sample.add(ids.get(i));
+        }
+        return sample;
+    }
+
+    // A collection whose $sample stage returns the given ids, already sorted
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<BsonDocument> collection(List<BsonValue> sample) {
+        MongoCollection<BsonDocument> collection = mock(MongoCollection.class);
+        AggregateIterable<BsonDocument> aggregate = mock(AggregateIterable.class);
+        when(collection.aggregate(anyList())).thenReturn(aggregate);
+        when(aggregate.iterator()).thenAnswer(invocation -> cursor(sample.stream()
+                .map(id -> new BsonDocument("_id", id))
+                .iterator()));
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<BsonDocument> cursor(Iterator<BsonDocument> documents) {
+        MongoCursor<BsonDocument> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> documents.next());
+        return cursor;
+    }
+}
@@ -0,0 +1,136 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillJournalTests {
+
+    private static final long SEGMENT_BYTES = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenResumesAfterTheLastTokenAndTheCommittedPosition() throws Exception {
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            append(journal, 1, 2, 3);
+            SpillJournal.Reader reader = journal.newReader();
+            reader.poll(0);
+            journal.commit(reader.poll(0).position());
+        }
+
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            assertEquals("3", journal.getLastToken().getString("_data").getValue());
+            assertEquals(List.of("3"), read(journal.newReader()));
+        }
+    }
+
+    @Test
+    void tornRecordAndEverythingAfterItAreDiscarded() throws Exception {
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            append(journal, 1, 2, 3);
+        }
+        // A crash mid-append: the third record's body never fully reached the disk
+        Path segment = segment(0);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int third = 0;
+        for (int i = 0; i < 2; i++) {
+            third += 8 + bytes.getInt(third);
+        }
+        int lastByte = third + 8 + bytes.getInt(third) - 1;
+        bytes.put(lastByte, (byte) ~bytes.get(lastByte));
+        Files.write(segment, bytes.array());
+
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            assertEquals("2", journal.getLastToken().getString("_data").getValue());
+            append(journal, 4);
+            assertEquals(List.of("1", "2", "4"), read(journal.newReader()));
+        }
+    }
+
+    @Test
+    void crashRightAfterRollResumesAfterThePreviousSegment() throws Exception {
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            append(journal, 1, 2);
+        }
+        // The next segment was created but nothing was written to it
+        Files.write(segment(1), new byte[(int) SEGMENT_BYTES]);
+
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            assertEquals("2", journal.getLastToken().getString("_data").getValue());
+            append(journal, 3);
+            assertEquals(List.of("1", "2", "3"), read(journal.newReader()));
+        }
+    }
+
+    @Test
+    void segmentsStayUntilTheSlowestReaderHasPassedThem() throws Exception {
+        try (SpillJournal journal = SpillJournal.open(directory, SEGMENT_BYTES)) {
+            SpillJournal.Reader fast = journal.newReader();
+            SpillJournal.Reader slow = journal.newReader();
+            int id = 0;
+            while (!Files.exists(segment(1))) {
+                append(journal, ++id);
+            }
+            int total = id;
+            SpillJournal.Entry last = null;
+            for (int i = 0; i < total; i++) {
+                last = fast.poll(0);
+            }
+            SpillJournal.Entry first = slow.poll(0);
+            assertEquals(0, fast.getBacklogBytes());
+            assertEquals(slow.getBacklogBytes(), journal.getBacklogBytes());
+
+            // The runner commits the lowest position any lane has applied
+            journal.commit(first.position());
+            assertTrue(Files.exists(segment(0)));
+
+            // The event that rolled the journal is the only one in the second segment
+            SpillJournal.Entry entry = first;
+            while (entry.position().segment() == 0) {
+                entry = slow.poll(0);
+            }
+            assertEquals(last.position(), entry.position());
+            journal.commit(entry.position());
+            assertFalse(Files.exists(segment(0)));
+        }
+    }
+
+    private static void append(SpillJournal journal, int... ids) throws IOException {
+        for (int id : ids) {
+            journal.append(change(id));
+        }
+    }
+
+    private static ChangeStreamDocument<RawBsonDocument> change(int id) {
+        return RawBsonDocument.parse("{_id: {_data: '" + id + "'}, operationType: 'delete',"
+                        + " ns: {db: 'sales', coll: 'orders'}, documentKey: {_id: " + id + "}}")
+                .decode(ChangeEventRecorder.CODEC);
+    }
+
+    private static List<String> read(SpillJournal.Reader reader) throws Exception {
+        List<String> tokens = new ArrayList<>();
+        SpillJournal.Entry entry;
+        while ((entry = reader.poll(0)) != null) {
+            tokens.add(entry.change().getResumeToken().getString("_data").getValue());
+        }
+        return tokens;
+    }
+
+    private Path segment(long index) {
+        return directory.resolve(String.format("segment-%012d.journal", index));
+    }
+}
@@ -0,0 +1,40 @@
+package com.mongodb.partreplication.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTests {
+
+    @Test
+    void burstOfOneSecondDoesNotWait() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000);
+
+        long startedAt = System.nanoTime();
+        bucket.take(1000);
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void takeBeyondTheBurstWaitsOffItsDebt() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100);
+        bucket.take(100);
+
+        long startedAt = System.nanoTime();
+        bucket.take(20);
+        // 20 permits at 100 per second
+        assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    void interruptedWaitThrows() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1);
+        bucket.take(1);
+
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> bucket.take(1));
+    }
+}
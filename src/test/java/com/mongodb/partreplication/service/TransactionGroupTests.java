@@ -0,0 +1,74 @@
+package com.mongodb.partreplication.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionGroupTests {
+
+    private static final MongoNamespace NAMESPACE = new MongoNamespace("sales", "orders");
+
+    @Test
+    void clusterTimeIsReadFromTheResumeToken() {
+        assertEquals(new BsonTimestamp(0x6543210F, 7), TransactionGroup.clusterTimeOf(token(0x6543210F, 7)));
+        assertNull(TransactionGroup.clusterTimeOf(BsonDocument.parse("{_data: '0001'}")));
+        assertNull(TransactionGroup.clusterTimeOf(BsonDocument.parse("{_data: '82XYZ'}")));
+        assertNull(TransactionGroup.clusterTimeOf(null));
+    }
+
+    @Test
+    void includesOnlyEventsOfTheSameTransactionAndClusterTime() {
+        TransactionGroup group = new TransactionGroup(change(1, 5, 100, 1));
+
+        assertTrue(group.includes(change(2, 5, 100, 1)));
+        assertFalse(group.includes(change(3, 6, 100, 1)));
+        assertFalse(group.includes(change(4, 5, 101, 1)));
+    }
+
+    @Test
+    void endsOnlyOnceTheStreamIsPastItsClusterTime() {
+        TransactionGroup group = new TransactionGroup(change(1, 5, 100, 1));
+
+        assertFalse(group.endedBefore(null));
+        assertFalse(group.endedBefore(token(100, 1)));
+        assertTrue(group.endedBefore(token(100, 2)));
+        assertTrue(group.endedBefore(token(101, 0)));
+    }
+
+    @Test
+    void fillsAtTheOperationOrByteLimit() {
+        TransactionGroup group = new TransactionGroup(change(1, 5, 100, 1));
+        group.add(change(1, 5, 100, 1), write());
+        assertFalse(group.isFull(2, 1 << 20));
+
+        group.add(change(2, 5, 100, 1), null);
+        assertTrue(group.isFull(2, 1 << 20));
+        assertTrue(group.isFull(1000, 10));
+    }
+
+    private static ChangeEventDecoder.Write write() {
+        return new ChangeEventDecoder.Write(NAMESPACE,
+                new InsertOneModel<>(RawBsonDocument.parse("{_id: 1, payload: 'abcdefghijklmnop'}")));
+    }
+
+    private static ChangeStreamDocument<RawBsonDocument> change(int id, long txnNumber, int seconds, int increment) {
+        return RawBsonDocument.parse("{_id: " + token(seconds, increment).toJson() + ", operationType: 'insert',"
+                        + " clusterTime: {$timestamp: {t: " + seconds + ", i: " + increment + "}},"
+                        + " lsid: {id: 'session'}, txnNumber: {$numberLong: '" + txnNumber + "'},"
+                        + " ns: {db: 'sales', coll: 'orders'}, documentKey: {_id: " + id + "}}")
+                .decode(ChangeEventRecorder.CODEC);
+    }
+
+    private static BsonDocument token(int seconds, int increment) {
+        return BsonDocument.parse("{_data: '82" + String.format("%08X%08X", seconds, increment) + "0100'}");
+    }
+}